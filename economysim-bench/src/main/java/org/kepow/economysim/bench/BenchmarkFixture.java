@@ -0,0 +1,179 @@
+package org.kepow.economysim.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.kepow.economysim.ItemConfig;
+import org.kepow.economysim.PluginState;
+import org.kepow.economysim.Simulator;
+import org.kepow.economysim.WorldConfig;
+
+/**
+ * Builds the plugin state the benchmarks run against, without
+ * a running server.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class BenchmarkFixture
+{
+    public static final String WORLD_GROUP = "default";
+
+    /**
+     * Number of items in each configured item group.
+     */
+    public static final int ITEM_GROUP_SIZE = 4;
+
+    /**
+     * Number of slots in a sell menu.
+     */
+    public static final int SELL_BASKET_SIZE = 54;
+
+    private BenchmarkFixture()
+    {
+    }
+
+    /**
+     * Create a catalogue of distinct items.
+     * @param size The number of items in the catalogue.
+     * @return The catalogue.
+     */
+    public static ItemStack[] createCatalogue(int size)
+    {
+        List<Material> materials = new ArrayList<Material>();
+        for(Material material : Material.values())
+        {
+            if(material != Material.AIR)
+            {
+                materials.add(material);
+            }
+        }
+
+        ItemStack[] catalogue = new ItemStack[size];
+        for(int i = 0; i < size; ++i)
+        {
+            Material material = materials.get(i % materials.size());
+            short data = (short) (i / materials.size());
+            catalogue[i] = new ItemStack(material, 1, data);
+        }
+
+        return catalogue;
+    }
+
+    /**
+     * Create an item configuration that groups consecutive catalogue items,
+     * mapping each group onto its first item.
+     * @param catalogue The catalogue.
+     * @return The item configuration.
+     */
+    public static ItemConfig createItemConfig(ItemStack[] catalogue)
+    {
+        YamlConfiguration config = new YamlConfiguration();
+
+        for(int group = 0; group < catalogue.length / ITEM_GROUP_SIZE; ++group)
+        {
+            List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+            for(int i = 0; i < ITEM_GROUP_SIZE; ++i)
+            {
+                Map<String, Object> item = new HashMap<String, Object>();
+                item.put("item", catalogue[group * ITEM_GROUP_SIZE + i]);
+                item.put("relativeValue", 1 << i);
+                items.add(item);
+            }
+
+            config.set("itemGroups.group" + group + ".items", items);
+            config.set("itemGroups.group" + group + ".allDataTypes", false);
+        }
+
+        return new ItemConfig(config.getConfigurationSection("itemGroups").getValues(false));
+    }
+
+    /**
+     * Create a world configuration with the default pricing parameters.
+     * @param curveTable Whether price curve tables should be used.
+     * @return The world configuration.
+     */
+    public static WorldConfig createWorldConfig(boolean curveTable)
+    {
+        YamlConfiguration config = new YamlConfiguration();
+
+        config.set("worldConfig.curveTable.enabled", curveTable);
+        config.set("worldConfig.curveTable.maxError", 0.001);
+        config.set("worldConfig.curveTable.maxDemand", 10000.0);
+
+        String prefix = "worldConfig.groups." + WORLD_GROUP + ".config.";
+        config.set(prefix + "basePrice", 2.5);
+        config.set(prefix + "minPricePerStack", 0.1);
+        config.set(prefix + "sellPriceSteepness", 0.03);
+        config.set(prefix + "buyPriceSteepness", 0.03);
+        config.set(prefix + "buyPriceAsymptoteSlope", 0.02);
+        config.set(prefix + "sellPriceFactor", 1.0);
+        config.set(prefix + "buyPriceFactor", 1.0);
+        config.set(prefix + "saleDecayPerDay", 0.01);
+        config.set(prefix + "buyDecayPerDay", 0.1);
+
+        return new WorldConfig(config.getConfigurationSection("worldConfig").getValues(false));
+    }
+
+    /**
+     * Install a fresh plugin state and record some demand for every catalogue item.
+     * @param catalogue The catalogue.
+     * @param curveTable Whether price curve tables should be used.
+     * @return The simulator.
+     */
+    public static Simulator install(ItemStack[] catalogue, boolean curveTable)
+    {
+        PluginState.setItemConfig(createItemConfig(catalogue));
+        PluginState.setWorldConfig(createWorldConfig(curveTable));
+
+        Simulator simulator = new Simulator();
+        simulator.setDecayPerDay(0.1, 0.01);
+        PluginState.setSimulator(simulator);
+
+        Random random = new Random(42);
+        for(ItemStack item : catalogue)
+        {
+            ItemStack bought = new ItemStack(item);
+            bought.setAmount(1 + random.nextInt(64));
+            simulator.addBuyMovement(WORLD_GROUP, new ItemStack[]{bought});
+
+            ItemStack sold = new ItemStack(item);
+            sold.setAmount(1 + random.nextInt(64));
+            simulator.addSaleMovement(WORLD_GROUP, new ItemStack[]{sold});
+        }
+
+        return simulator;
+    }
+
+    /**
+     * Create baskets of random catalogue items.
+     * @param catalogue The catalogue.
+     * @param numBaskets The number of baskets.
+     * @param basketSize The number of stacks in each basket.
+     * @return The baskets.
+     */
+    public static ItemStack[][] createBaskets(ItemStack[] catalogue, int numBaskets, int basketSize)
+    {
+        Random random = new Random(1337);
+
+        ItemStack[][] baskets = new ItemStack[numBaskets][];
+        for(int i = 0; i < numBaskets; ++i)
+        {
+            baskets[i] = new ItemStack[basketSize];
+            for(int j = 0; j < basketSize; ++j)
+            {
+                ItemStack item = new ItemStack(catalogue[random.nextInt(catalogue.length)]);
+                item.setAmount(1 + random.nextInt(item.getMaxStackSize()));
+                baskets[i][j] = item;
+            }
+        }
+
+        return baskets;
+    }
+}
@@ -0,0 +1,255 @@
+package org.kepow.economysim.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.bukkit.inventory.ItemStack;
+import org.kepow.economysim.DemandStore;
+import org.kepow.economysim.ItemConfig;
+import org.kepow.economysim.PluginState;
+import org.kepow.economysim.Simulator;
+import org.kepow.economysim.Simulator.TransactionType;
+import org.kepow.economysim.TransactionJournal;
+import org.kepow.economysim.WorldSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stress benchmark of quoting from several threads while other threads
+ * record buy movement in the same world group, create world groups by
+ * recording movement in them, and take journaled snapshots of the simulator.
+ *
+ * Every iteration starts in a fresh world group, so the demand store grows
+ * while it is being read. Movement never decays, so each reader checks that
+ * the quotes it sees never drop, and at the end of each iteration the
+ * recorded movement is checked against the movement that was added. The 
+ * journal is then replayed into the latest snapshot, which must restore 
+ * every world group of the iteration exactly, as it would on a restart.
+ * An inconsistency fails the benchmark.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentionBenchmark
+{
+    /**
+     * The quotes a reader thread has seen in the current world group.
+     *
+     * @author Thomas Churchman
+     *
+     */
+    @State(Scope.Thread)
+    public static class Reader
+    {
+        private String worldGroup;
+        private double[] lastPrices;
+        private int next;
+    }
+
+    /**
+     * Number of world groups created by recording movement in each iteration.
+     */
+    private static final int NUM_CREATED_GROUPS = 64;
+
+    @Param({"250", "10000"})
+    public int catalogueSize;
+
+    private Simulator simulator;
+    private ItemStack[][] singleItems;
+    private ItemConfig.ItemMap[] mappings;
+
+    private int iteration = 0;
+    private volatile String worldGroup;
+    private AtomicInteger nextItem;
+    private volatile AtomicIntegerArray added;
+    private AtomicInteger nextCreated;
+    private File journalDirectory;
+    private TransactionJournal journal;
+    private volatile Simulator snapshot;
+
+    @Setup
+    public void setUp()
+    {
+        ItemStack[] catalogue = BenchmarkFixture.createCatalogue(catalogueSize);
+        simulator = BenchmarkFixture.install(catalogue, false);
+        simulator.setLazyDecay(false);
+
+        // The first item of each item group, which maps onto itself
+        int numItems = catalogue.length / BenchmarkFixture.ITEM_GROUP_SIZE;
+        singleItems = new ItemStack[numItems][];
+        mappings = new ItemConfig.ItemMap[numItems];
+        for(int i = 0; i < numItems; ++i)
+        {
+            singleItems[i] = new ItemStack[]{catalogue[i * BenchmarkFixture.ITEM_GROUP_SIZE]};
+            mappings[i] = PluginState.getItemConfig().getMapping(singleItems[i][0]);
+        }
+
+        nextItem = new AtomicInteger();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() throws IOException
+    {
+        added = new AtomicIntegerArray(singleItems.length);
+        nextCreated = new AtomicInteger();
+        worldGroup = "contention" + iteration++;
+
+        // Snapshots of this iteration replay from an empty journal
+        journalDirectory = Files.createTempDirectory("economysim-journal").toFile();
+        journal = new TransactionJournal(journalDirectory, 10);
+        journal.open(new Simulator());
+        simulator.setJournal(journal);
+        snapshot = simulator.snapshot();
+    }
+
+    @TearDown(Level.Iteration)
+    public void verify() throws IOException
+    {
+        verifyMovement();
+        verifySnapshot();
+    }
+
+    /**
+     * Check the movement recorded in the world group of the iteration
+     * against the movement that was added.
+     */
+    private void verifyMovement()
+    {
+        DemandStore demandStore = simulator.getWorldSimulator(worldGroup).getDemandStore();
+        long now = System.currentTimeMillis();
+
+        for(int i = 0; i < singleItems.length; ++i)
+        {
+            double expected = added.get(i) * mappings[i].getRelativeValue();
+
+            int slot = demandStore.indexOf(mappings[i].getKey());
+            double actual = slot < 0 ? 0 : demandStore.getBuyMovement(slot, now);
+
+            if(actual != expected)
+            {
+                throw new IllegalStateException("Lost movement for item " + i + ": expected " + expected + ", recorded " + actual);
+            }
+        }
+    }
+
+    /**
+     * Check that replaying the journal into the latest snapshot restores
+     * the world groups of the iteration.
+     * @throws IOException If the journal could not be read.
+     */
+    private void verifySnapshot() throws IOException
+    {
+        simulator.setJournal(null);
+        journal.close();
+
+        Simulator restored = snapshot;
+        TransactionJournal replayed = new TransactionJournal(journalDirectory, 10);
+        replayed.open(restored);
+        replayed.close();
+
+        for(WorldSimulator live : simulator.getWorldSimulators())
+        {
+            if(!live.getWorldGroup().startsWith(worldGroup))
+            {
+                continue;
+            }
+
+            DemandStore expected = live.getDemandStore();
+            DemandStore actual = restored.getWorldSimulator(live.getWorldGroup()).getDemandStore();
+            long now = System.currentTimeMillis();
+
+            for(int i = 0; i < expected.size(); ++i)
+            {
+                int slot = actual.indexOf(expected.getKey(i));
+                double buyMovement = slot < 0 ? 0 : actual.getBuyMovement(slot, now);
+
+                if(buyMovement != expected.getBuyMovement(i, now))
+                {
+                    throw new IllegalStateException("Snapshot and journal lost movement in " + live.getWorldGroup() 
+                        + ": expected " + expected.getBuyMovement(i, now) + ", restored " + buyMovement);
+                }
+            }
+        }
+
+        for(File file : journalDirectory.listFiles())
+        {
+            file.delete();
+        }
+        journalDirectory.delete();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public double quote(Reader reader)
+    {
+        String group = worldGroup;
+        if(!group.equals(reader.worldGroup))
+        {
+            reader.worldGroup = group;
+            reader.lastPrices = new double[singleItems.length];
+        }
+
+        int i = reader.next = (reader.next + 1) % singleItems.length;
+        double price = simulator.getTotalPrice(group, singleItems[i], TransactionType.BUY);
+
+        if(price < reader.lastPrices[i])
+        {
+            throw new IllegalStateException("Quote of item " + i + " dropped from " + reader.lastPrices[i] + " to " + price);
+        }
+        reader.lastPrices[i] = price;
+
+        return price;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public void buy()
+    {
+        int i = (nextItem.getAndIncrement() & Integer.MAX_VALUE) % singleItems.length;
+        simulator.addBuyMovement(worldGroup, singleItems[i]);
+        added.incrementAndGet(i);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void create()
+    {
+        // Each of the first calls creates a world group, later calls add to them
+        int n = nextCreated.getAndIncrement() & Integer.MAX_VALUE;
+        simulator.addBuyMovement(worldGroup + "-" + (n % NUM_CREATED_GROUPS), singleItems[n % singleItems.length]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Simulator snapshot()
+    {
+        return snapshot = simulator.snapshot();
+    }
+}
@@ -0,0 +1,85 @@
+package org.kepow.economysim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.inventory.ItemStack;
+import org.kepow.economysim.Simulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of recording demand movement and of decaying
+ * the tracked demand.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DemandBenchmark
+{
+    private static final int NUM_BASKETS = 256;
+
+    @Param({"250", "10000"})
+    public int catalogueSize;
+
+    @Param({"false", "true"})
+    public boolean lazyDecay;
+
+    private ItemStack[] catalogue;
+    private Simulator simulator;
+    private ItemStack[][] singleItems;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        catalogue = BenchmarkFixture.createCatalogue(catalogueSize);
+        singleItems = BenchmarkFixture.createBaskets(catalogue, NUM_BASKETS, 1);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration()
+    {
+        // Start every iteration from the same demand, so iterations are comparable
+        simulator = BenchmarkFixture.install(catalogue, false);
+        simulator.setLazyDecay(lazyDecay);
+        next = 0;
+    }
+
+    @Benchmark
+    public void addMovement()
+    {
+        // Alternate between buying and selling each basket, so demand does not drift
+        next = (next + 1) % (2 * NUM_BASKETS);
+        if(next < NUM_BASKETS)
+        {
+            simulator.addBuyMovement(BenchmarkFixture.WORLD_GROUP, singleItems[next]);
+        }
+        else
+        {
+            simulator.addSaleMovement(BenchmarkFixture.WORLD_GROUP, singleItems[next - NUM_BASKETS]);
+        }
+    }
+
+    @Benchmark
+    public void decay()
+    {
+        // One five minute interval
+        simulator.performPeriodicDecay(1.0 / 288);
+    }
+}
@@ -0,0 +1,82 @@
+package org.kepow.economysim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.inventory.ItemStack;
+import org.kepow.economysim.ItemConfig;
+import org.kepow.economysim.PluginState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of item mapping lookups, for both configured and
+ * unconfigured items.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark
+{
+    private static final int NUM_ITEMS = 256;
+
+    @Param({"250", "10000"})
+    public int catalogueSize;
+
+    private ItemConfig itemConfig;
+    private ItemStack[] mappedItems;
+    private ItemStack[] unmappedItems;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        // Only configure half of the catalogue, so the other half is unmapped
+        ItemStack[] catalogue = BenchmarkFixture.createCatalogue(catalogueSize * 2);
+        ItemStack[] configured = new ItemStack[catalogueSize];
+        System.arraycopy(catalogue, 0, configured, 0, catalogueSize);
+
+        BenchmarkFixture.install(configured, false);
+        itemConfig = PluginState.getItemConfig();
+
+        mappedItems = new ItemStack[NUM_ITEMS];
+        unmappedItems = new ItemStack[NUM_ITEMS];
+        for(int i = 0; i < NUM_ITEMS; ++i)
+        {
+            mappedItems[i] = catalogue[(i * 7919) % catalogueSize];
+            unmappedItems[i] = catalogue[catalogueSize + (i * 7919) % catalogueSize];
+        }
+    }
+
+    private int nextIndex()
+    {
+        next = (next + 1) % NUM_ITEMS;
+        return next;
+    }
+
+    @Benchmark
+    public ItemConfig.ItemMap mappedLookup()
+    {
+        return itemConfig.getMapping(mappedItems[nextIndex()]);
+    }
+
+    @Benchmark
+    public ItemConfig.ItemMap unmappedLookup()
+    {
+        return itemConfig.getMapping(unmappedItems[nextIndex()]);
+    }
+}
@@ -0,0 +1,89 @@
+package org.kepow.economysim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.inventory.ItemStack;
+import org.kepow.economysim.Simulator;
+import org.kepow.economysim.Simulator.TransactionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the pricing hot paths: the transaction price equation,
+ * single-item quotes and full sell basket quotes.
+ *
+ * @author Thomas Churchman
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuoteBenchmark
+{
+    private static final int NUM_BASKETS = 256;
+
+    @Param({"250", "10000"})
+    public int catalogueSize;
+
+    @Param({"false", "true"})
+    public boolean curveTable;
+
+    private Simulator simulator;
+    private ItemStack[][] singleItems;
+    private ItemStack[][] sellBaskets;
+    private double[] demands;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        ItemStack[] catalogue = BenchmarkFixture.createCatalogue(catalogueSize);
+        simulator = BenchmarkFixture.install(catalogue, curveTable);
+
+        singleItems = BenchmarkFixture.createBaskets(catalogue, NUM_BASKETS, 1);
+        sellBaskets = BenchmarkFixture.createBaskets(catalogue, NUM_BASKETS, BenchmarkFixture.SELL_BASKET_SIZE);
+
+        demands = new double[NUM_BASKETS];
+        for(int i = 0; i < NUM_BASKETS; ++i)
+        {
+            demands[i] = (i - NUM_BASKETS / 2) * 10.5;
+        }
+    }
+
+    private int nextIndex()
+    {
+        next = (next + 1) % NUM_BASKETS;
+        return next;
+    }
+
+    @Benchmark
+    public double transactionPrice()
+    {
+        return Simulator.getTransactionPrice(TransactionType.BUY, 64, demands[nextIndex()], 
+            2.5, 0.1, 0.03, 0.03, 0.02, 1.0, 1.0);
+    }
+
+    @Benchmark
+    public double singleItemQuote()
+    {
+        return simulator.getTotalPrice(BenchmarkFixture.WORLD_GROUP, singleItems[nextIndex()], TransactionType.BUY);
+    }
+
+    @Benchmark
+    public double sellBasketQuote()
+    {
+        return simulator.getTotalPrice(BenchmarkFixture.WORLD_GROUP, sellBaskets[nextIndex()], TransactionType.SELL);
+    }
+}
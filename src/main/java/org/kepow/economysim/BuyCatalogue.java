@@ -0,0 +1,351 @@
+package org.kepow.economysim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+/**
+ * Class representing the buy buttons of a shop in a world group. The
+ * button items are quoted and rendered once, and are shared by all buy
+ * menus open on the shop in the world group. Items are only quoted again
+ * when their demand changes, when decay is performed or the pricing 
+ * parameters change, and, as demand may decay lazily, when a menu is added 
+ * a while after they were last quoted. Only used on the main thread.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class BuyCatalogue
+{
+    /**
+     * Class representing an item in the catalogue.
+     *
+     * @author Thomas Churchman
+     *
+     */
+    private class Entry
+    {
+        private ItemStack representedItem;
+        private ItemStack item;
+        private int key;
+        private boolean stale = true;
+        private long quoteTime = 0;
+        private int numQuotes = 0;
+        private Quote[] quotes = null;
+
+        /**
+         * Constructor.
+         * @param representedItem The item stack the entry represents.
+         */
+        public Entry(ItemStack representedItem)
+        {
+            this.representedItem = new ItemStack(representedItem);
+            this.representedItem.setAmount(1);
+
+            this.item = new ItemStack(this.representedItem);
+            this.key = PluginState.getItemConfig().getMapping(this.representedItem).getKey();
+        }
+    }
+
+    private static final long MAX_QUOTE_AGE = 60 * 1000;
+
+    private String worldGroup;
+    private int goodsVersion;
+    private HashMap<Integer, Entry> entries;
+    private ItemKeyMap<List<Entry>> keyEntries;
+    private List<Menu> menus;
+
+    /**
+     * Constructor.
+     * @param shop The shop.
+     * @param worldGroup The world group the items are priced in.
+     */
+    public BuyCatalogue(Shop shop, String worldGroup)
+    {
+        this.worldGroup = worldGroup;
+        this.goodsVersion = shop.getGoodsVersion();
+
+        entries = new HashMap<Integer, Entry>();
+        keyEntries = new ItemKeyMap<List<Entry>>();
+        menus = new ArrayList<Menu>();
+
+        HashMap<Integer, ItemStack> items = shop.getGoods();
+        for(int slot : items.keySet())
+        {
+            Entry entry = new Entry(items.get(slot));
+            entries.put(slot, entry);
+
+            List<Entry> sameKey = keyEntries.get(entry.key);
+            if(sameKey == null)
+            {
+                sameKey = new ArrayList<Entry>();
+                keyEntries.put(entry.key, sameKey);
+            }
+            sameKey.add(entry);
+        }
+    }
+
+    /**
+     * Get the world group the items are priced in.
+     * @return The world group.
+     */
+    public String getWorldGroup()
+    {
+        return worldGroup;
+    }
+
+    /**
+     * Get the version of the shop's stock the catalogue was made from.
+     * @return The version of the stock.
+     */
+    public int getGoodsVersion()
+    {
+        return goodsVersion;
+    }
+
+    /**
+     * Get the slots of the items in the catalogue.
+     * @return The slots.
+     */
+    public Iterable<Integer> getSlots()
+    {
+        return entries.keySet();
+    }
+
+    /**
+     * Get the button item of the item at a slot. The item is shared, and
+     * changes when the item is quoted again.
+     * @param slot The slot.
+     * @return The button item.
+     */
+    public ItemStack getItem(int slot)
+    {
+        return entries.get(slot).item;
+    }
+
+    /**
+     * Get the item stack (of a single item) represented at a slot.
+     * @param slot The slot.
+     * @return The represented item stack.
+     */
+    public ItemStack getRepresentedItem(int slot)
+    {
+        return entries.get(slot).representedItem;
+    }
+
+    /**
+     * Get the quote shown for the item at a slot.
+     * @param slot The slot.
+     * @param stack Whether to get the quote of a stack, rather than of a single item.
+     * @return The quote, or null if the item was not quoted yet.
+     */
+    public Quote getQuote(int slot, boolean stack)
+    {
+        Quote[] quotes = entries.get(slot).quotes;
+        if(quotes == null)
+        {
+            return null;
+        }
+
+        return stack && quotes.length > 1 ? quotes[1] : quotes[0];
+    }
+
+    /**
+     * Add a menu showing the catalogue. Items that went stale while
+     * no menu showed them, or that were quoted too long ago, are quoted.
+     * @param menu The menu.
+     */
+    public void addMenu(Menu menu)
+    {
+        menus.add(menu);
+
+        long now = System.currentTimeMillis();
+        List<Entry> stale = new ArrayList<Entry>();
+        for(Entry entry : entries.values())
+        {
+            if(entry.stale || now - entry.quoteTime > MAX_QUOTE_AGE)
+            {
+                stale.add(entry);
+            }
+        }
+        quote(stale);
+    }
+
+    /**
+     * Remove a menu showing the catalogue.
+     * @param menu The menu.
+     */
+    public void removeMenu(Menu menu)
+    {
+        menus.remove(menu);
+    }
+
+    /**
+     * Test whether a menu shows the catalogue.
+     * @return True if a menu shows the catalogue, false otherwise.
+     */
+    public boolean hasMenus()
+    {
+        return !menus.isEmpty();
+    }
+
+    /**
+     * Quote the item at a slot again.
+     * @param slot The slot.
+     */
+    public void update(int slot)
+    {
+        quote(Arrays.asList(entries.get(slot)));
+    }
+
+    /**
+     * Quote the items whose demand changed again. If no menu shows the
+     * catalogue, the items are quoted when a menu is added.
+     * @param changed The item keys of the items whose demand changed.
+     */
+    public void update(ItemKeyIndex changed)
+    {
+        List<Entry> stale = new ArrayList<Entry>();
+        for(int i = 0; i < changed.size(); ++i)
+        {
+            List<Entry> sameKey = keyEntries.get(changed.getKey(i));
+            if(sameKey != null)
+            {
+                for(Entry entry : sameKey)
+                {
+                    entry.stale = true;
+                    stale.add(entry);
+                }
+            }
+        }
+
+        if(!menus.isEmpty())
+        {
+            quote(stale);
+        }
+    }
+
+    /**
+     * Quote all items again, e.g. after decay was performed. If no menu shows 
+     * the catalogue, the items are quoted when a menu is added.
+     */
+    public void invalidate()
+    {
+        List<Entry> stale = new ArrayList<Entry>(entries.values());
+        for(Entry entry : stale)
+        {
+            entry.stale = true;
+        }
+
+        if(!menus.isEmpty())
+        {
+            quote(stale);
+        }
+    }
+
+    /**
+     * Quote items in the background. Once the prices are known, they are
+     * shown on the items and the menus showing the catalogue are updated.
+     * @param quoted The entries of the items to quote.
+     */
+    private void quote(final List<Entry> quoted)
+    {
+        if(quoted.isEmpty())
+        {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        final int[] numbers = new int[quoted.size()];
+        List<ItemStack[]> baskets = new ArrayList<ItemStack[]>();
+        for(int i = 0; i < quoted.size(); ++i)
+        {
+            Entry entry = quoted.get(i);
+            entry.stale = false;
+            entry.quoteTime = now;
+            numbers[i] = ++entry.numQuotes;
+
+            baskets.add(new ItemStack[]{entry.representedItem});
+
+            int stackSize = entry.representedItem.getMaxStackSize();
+            if(stackSize > 1)
+            {
+                ItemStack stacked = new ItemStack(entry.representedItem);
+                stacked.setAmount(stackSize);
+                baskets.add(new ItemStack[]{stacked});
+            }
+        }
+
+        PluginState.getQuoteService().quote(worldGroup, baskets.toArray(new ItemStack[0][]), Simulator.TransactionType.BUY, new QuoteListener()
+        {
+            public void onQuote(Quote[] quotes)
+            {
+                int basket = 0;
+                for(int i = 0; i < quoted.size(); ++i)
+                {
+                    Entry entry = quoted.get(i);
+                    boolean stacks = entry.representedItem.getMaxStackSize() > 1;
+
+                    if(numbers[i] == entry.numQuotes)
+                    {   // No later quote is under way
+                        if(stacks)
+                        {
+                            showPrices(entry, new Quote[]{quotes[basket], quotes[basket + 1]});
+                        }
+                        else
+                        {
+                            showPrices(entry, new Quote[]{quotes[basket]});
+                        }
+                    }
+
+                    basket += stacks ? 2 : 1;
+                }
+
+                for(Menu menu : menus)
+                {
+                    menu.updateInventory();
+                }
+            }
+        });
+    }
+
+    /**
+     * Show quoted prices on the item of an entry.
+     * @param entry The entry.
+     * @param quotes The quote of a single item, and, if the item
+     * stacks, the quote of a stack.
+     */
+    private void showPrices(Entry entry, Quote[] quotes)
+    {
+        entry.quotes = quotes;
+        double priceFor1 = quotes[0].getPrice();
+
+        ItemMeta meta = entry.representedItem.getItemMeta();
+
+        if(quotes.length > 1)
+        {
+            int stackSize = entry.item.getMaxStackSize();
+            double stackedPrice = quotes[1].getPrice();
+
+            meta.setLore(Arrays.asList(Utils.prepareDescription("buttonDescriptions.buyStack",
+                "%priceOne", priceFor1,
+                "%priceStack", stackedPrice,
+                "%stackSize", stackSize,
+                "%currencySingular", EconomySim.economy.currencyNameSingular(),
+                "%currencyPlural", EconomySim.economy.currencyNamePlural())));
+        }
+        else
+        {
+            meta.setLore(Arrays.asList(Utils.prepareDescription("buttonDescriptions.buyOne",
+                "%priceOne", priceFor1,
+                "%currencySingular", EconomySim.economy.currencyNameSingular(),
+                "%currencyPlural", EconomySim.economy.currencyNamePlural())));
+        }
+
+        entry.item.setItemMeta(meta);
+    }
+}
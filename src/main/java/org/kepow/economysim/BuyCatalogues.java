@@ -0,0 +1,148 @@
+package org.kepow.economysim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class representing the buy catalogues of the shops, per world group.
+ * A catalogue is made when a buy menu is first opened on a shop in a
+ * world group, and is made again when the shop's stock changed. A 
+ * catalogue that is replaced (or whose shop is removed) is kept up to date 
+ * until the menus still showing it are closed. Only used on the main thread.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class BuyCatalogues
+{
+    private Map<String, Map<Shop, BuyCatalogue>> catalogues;
+    private List<BuyCatalogue> replaced;
+
+    /**
+     * Constructor.
+     */
+    public BuyCatalogues()
+    {
+        catalogues = new HashMap<String, Map<Shop, BuyCatalogue>>();
+        replaced = new ArrayList<BuyCatalogue>();
+    }
+
+    /**
+     * Get the catalogue of a shop in a world group.
+     * @param shop The shop.
+     * @param worldGroup The world group.
+     * @return The catalogue.
+     */
+    public BuyCatalogue get(Shop shop, String worldGroup)
+    {
+        Map<Shop, BuyCatalogue> groupCatalogues = catalogues.get(worldGroup);
+        if(groupCatalogues == null)
+        {
+            groupCatalogues = new HashMap<Shop, BuyCatalogue>();
+            catalogues.put(worldGroup, groupCatalogues);
+        }
+
+        BuyCatalogue catalogue = groupCatalogues.get(shop);
+        if(catalogue == null || catalogue.getGoodsVersion() != shop.getGoodsVersion())
+        {
+            retire(catalogue);
+            catalogue = new BuyCatalogue(shop, worldGroup);
+            groupCatalogues.put(shop, catalogue);
+        }
+
+        return catalogue;
+    }
+
+    /**
+     * Remove the catalogues of a shop.
+     * @param shop The shop.
+     */
+    public void remove(Shop shop)
+    {
+        for(Map<Shop, BuyCatalogue> groupCatalogues : catalogues.values())
+        {
+            retire(groupCatalogues.remove(shop));
+        }
+    }
+
+    /**
+     * Keep a catalogue that is no longer used for new menus up to date, 
+     * as long as menus show it.
+     * @param catalogue The catalogue, or null.
+     */
+    private void retire(BuyCatalogue catalogue)
+    {
+        if(catalogue != null && catalogue.hasMenus())
+        {
+            replaced.add(catalogue);
+        }
+    }
+
+    /**
+     * Forget the replaced catalogues that no menu shows anymore.
+     */
+    private void pruneReplaced()
+    {
+        Iterator<BuyCatalogue> iterator = replaced.iterator();
+        while(iterator.hasNext())
+        {
+            if(!iterator.next().hasMenus())
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Let all catalogues quote all their items again.
+     */
+    public void invalidate()
+    {
+        for(Map<Shop, BuyCatalogue> groupCatalogues : catalogues.values())
+        {
+            for(BuyCatalogue catalogue : groupCatalogues.values())
+            {
+                catalogue.invalidate();
+            }
+        }
+
+        pruneReplaced();
+        for(BuyCatalogue catalogue : replaced)
+        {
+            catalogue.invalidate();
+        }
+    }
+
+    /**
+     * Let the catalogues quote the items whose demand changed again.
+     * @param changed For each world group with changed demand, the item keys
+     * of the changed items.
+     */
+    public void update(Map<String, ItemKeyIndex> changed)
+    {
+        for(String worldGroup : changed.keySet())
+        {
+            Map<Shop, BuyCatalogue> groupCatalogues = catalogues.get(worldGroup);
+            if(groupCatalogues != null)
+            {
+                for(BuyCatalogue catalogue : groupCatalogues.values())
+                {
+                    catalogue.update(changed.get(worldGroup));
+                }
+            }
+        }
+
+        pruneReplaced();
+        for(BuyCatalogue catalogue : replaced)
+        {
+            ItemKeyIndex keys = changed.get(catalogue.getWorldGroup());
+            if(keys != null)
+            {
+                catalogue.update(keys);
+            }
+        }
+    }
+}
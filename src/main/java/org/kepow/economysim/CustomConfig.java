@@ -60,6 +60,15 @@ public class CustomConfig
         }
     }
 
+    /**
+     * Get the filename of the custom config file.
+     * @return The filename.
+     */
+    public String getFileName()
+    {
+        return dataFileName;
+    }
+
     /**
      * Get the config object.
      * @return The config object.
@@ -84,7 +93,7 @@ public class CustomConfig
         }
         try 
         {
-            getCustomConfig().save(shopDataFile);
+            saveToFile(getCustomConfig().saveToString());
         } 
         catch (IOException ex) 
         {
@@ -92,6 +101,19 @@ public class CustomConfig
         }
     }
 
+    /**
+     * Write data to the custom config file. The data is first written to a 
+     * temporary file, which then replaces the config file, so that the config 
+     * file is never left partially written. Can be called from any thread.
+     * @param data The data to write.
+     * @throws IOException If the data could not be written.
+     */
+    public void saveToFile(String data) throws IOException
+    {
+        File file = new File(PluginState.getPlugin().getDataFolder(), dataFileName);
+        Utils.writeFileAtomically(file, data.getBytes("UTF8"));
+    }
+
     /**
      * Save the default config to file if the file does not exist yet.
      */
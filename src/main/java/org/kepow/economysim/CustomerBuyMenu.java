@@ -1,13 +1,10 @@
 package org.kepow.economysim;
 
-import java.util.HashMap;
-
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.inventory.InventoryOpenEvent;
-import org.bukkit.inventory.ItemStack;
 
 /**
  * Class that represents the menu a player sees when they
@@ -18,6 +15,8 @@ import org.bukkit.inventory.ItemStack;
  */
 public class CustomerBuyMenu extends ShopMenu implements MenuListener
 {
+    private BuyCatalogue catalogue;
+
     /**
      * Listener class for the "Finish"-button.
      * 
@@ -58,12 +57,14 @@ public class CustomerBuyMenu extends ShopMenu implements MenuListener
         }
         this.prepareInventory();
 
-        HashMap<Integer, ItemStack> items = shop.getGoods();
-        for(int slot : items.keySet())
+        String worldGroup = PluginState.getWorldConfig().getGroupFromWorld(player.getWorld());
+        catalogue = PluginState.getPlugin().getBuyCatalogues().get(shop, worldGroup);
+        for(int slot : catalogue.getSlots())
         {
-            MenuBuyItemButton button = new MenuBuyItemButton(this, items.get(slot));
+            MenuBuyItemButton button = new MenuBuyItemButton(catalogue, slot);
             this.setButton(slot, button);
         }
+        catalogue.addMenu(this);
 
         MenuButton finishButton = new MenuButton(Material.REDSTONE_BLOCK, "Finish", new String[]{"Finish buying and close", "the shop."});
         finishButton.setListener(new FinishMenuButtonListener());
@@ -76,6 +77,8 @@ public class CustomerBuyMenu extends ShopMenu implements MenuListener
      */
     public void onMenuInventoryClose(Menu menu, InventoryCloseEvent event) 
     {
+        catalogue.removeMenu(this);
+
         Player player = menu.getPlayer();
         player.sendMessage(Utils.prepareMessage("transactions.closeBuy", "%player", player.getName()));
     }
@@ -1,5 +1,8 @@
 package org.kepow.economysim;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import net.milkbowl.vault.economy.EconomyResponse;
 
 import org.bukkit.Material;
@@ -45,14 +48,43 @@ public class CustomerSellMenu extends ShopMenu implements MenuListener
         }
     }
 
+    /**
+     * Class representing the latest quote of the placed items of an item key.
+     * 
+     * @author Thomas Churchman
+     *
+     */
+    private class KeyQuote
+    {
+        private int numQuotes = 0;
+        private int shownQuote = 0;
+        private Quote quote = null;
+    }
+
     /**
      * Listener class for the "Confirm"-button.
      * 
      * @author Thomas Churchman
      *
      */
-    private class ConfirmMenuButtonListener implements MenuButtonListener
+    private class ConfirmMenuButtonListener implements MenuButtonListener, DemandListener
     {
+        private MenuButton button;
+        private PlacedItems placedItems;
+        private ItemKeyMap<KeyQuote> keyQuotes;
+
+        /**
+         * Constructor.
+         * @param button The button showing the total price.
+         * @param placedItems The items placed in the menu.
+         */
+        public ConfirmMenuButtonListener(MenuButton button, PlacedItems placedItems)
+        {
+            this.button = button;
+            this.placedItems = placedItems;
+            this.keyQuotes = new ItemKeyMap<KeyQuote>();
+        }
+
         /*
          * (non-Javadoc)
          * @see org.kepow.economysim.MenuButtonListener#onMenuButtonClick(org.kepow.economysim.Menu, org.kepow.economysim.MenuButton, org.bukkit.event.inventory.InventoryClickEvent)
@@ -67,15 +99,21 @@ public class CustomerSellMenu extends ShopMenu implements MenuListener
 
             if(items.length > 0)
             {
-                double price = PluginState.getSimulator().getTotalPrice(worldGroup, items, Simulator.TransactionType.SELL);
+                // Charge the shown price if it still holds, otherwise quote once more
+                Double price = getQuotedTotal(worldGroup);
+                if(price == null)
+                {
+                    price = PluginState.getSimulator().getTotalPrice(worldGroup, items, Simulator.TransactionType.SELL);
+                }
+
                 EconomyResponse r = EconomySim.economy.depositPlayer(player, price);
 
                 if(r.transactionSuccess())
                 {
                     CustomerSellMenu.this.confirmedSale = true;
 
-                    PluginState.getSimulator().addSaleMovement(worldGroup, items);
-                    PluginState.getPlugin().updateAllMenus();
+                    PluginState.getSimulator().bufferSaleMovement(worldGroup, items);
+                    PluginState.getPlugin().scheduleMovementFlush();
 
                     player.sendMessage(Utils.prepareMessage("transactions.soldItem", 
                         "%amount", items.length, 
@@ -99,28 +137,173 @@ public class CustomerSellMenu extends ShopMenu implements MenuListener
          */
         public void onMenuUpdate(Menu menu, MenuButton sender) 
         {
-            ItemStack[] items = menu.getPlacedItems();
+            quote(menu, takeChangedKeys(menu));
+        }
 
-            Player player = menu.getPlayer();
-            String worldGroup = PluginState.getWorldConfig().getGroupFromWorld(player.getWorld());
+        /*
+         * (non-Javadoc)
+         * @see org.kepow.economysim.DemandListener#onDemandChange(org.kepow.economysim.Menu, org.kepow.economysim.ItemKeyIndex)
+         */
+        public void onDemandChange(Menu menu, ItemKeyIndex changed) 
+        {
+            // Also quote the placed items that changed since they were last quoted
+            ItemKeyIndex keys = takeChangedKeys(menu);
+            for(int i = 0; i < changed.size(); ++i)
+            {
+                keys.getOrAddSlot(changed.getKey(i));
+            }
 
-            double price = PluginState.getSimulator().getTotalPrice(worldGroup, items, Simulator.TransactionType.SELL);
-            if(items.length > 0)
+            quote(menu, keys);
+        }
+
+        /**
+         * Take the item keys whose placed items changed, and listen to the 
+         * demand of the items that are placed now.
+         * @param menu The menu.
+         * @return The changed item keys.
+         */
+        private ItemKeyIndex takeChangedKeys(Menu menu)
+        {
+            ItemKeyIndex keys = placedItems.takeChangedKeys();
+            if(keys.size() > 0)
             {
-                sender.setDescription(Utils.prepareDescription("buttonDescriptions.confirmSaleWithPrice", 
-                    "%amount", items.length, 
-                    "%value", price, 
-                    "%currencySingular", EconomySim.economy.currencyNameSingular(), 
-                    "%currencyPlural", EconomySim.economy.currencyNamePlural()));
+                PluginState.getPlugin().getMenuIndex().setKeys(menu, this, placedItems.getKeys());
             }
-            else
+
+            return keys;
+        }
+
+        /**
+         * Quote the placed items of item keys in the background, and show the
+         * total price once all placed items are quoted.
+         * @param menu The menu.
+         * @param keys The item keys to quote.
+         */
+        private void quote(final Menu menu, ItemKeyIndex keys)
+        {
+            if(keys.size() == 0)
             {
-                sender.setDescription(Utils.prepareDescription("buttonDescriptions.confirmSale"));
+                return;
             }
 
-            menu.updateInventory();
+            final List<KeyQuote> quoted = new ArrayList<KeyQuote>();
+            List<ItemStack[]> baskets = new ArrayList<ItemStack[]>();
+            for(int i = 0; i < keys.size(); ++i)
+            {
+                KeyQuote keyQuote = keyQuotes.get(keys.getKey(i));
+                if(keyQuote == null)
+                {
+                    keyQuote = new KeyQuote();
+                    keyQuotes.put(keys.getKey(i), keyQuote);
+                }
+                ++keyQuote.numQuotes;
+
+                ItemStack[] items = placedItems.getItems(keys.getKey(i));
+                if(items.length == 0)
+                {   // No items of the key are placed anymore
+                    keyQuote.quote = null;
+                    keyQuote.shownQuote = keyQuote.numQuotes;
+                    continue;
+                }
+
+                quoted.add(keyQuote);
+                baskets.add(items);
+            }
+
+            if(quoted.isEmpty())
+            {
+                showTotal(menu);
+                return;
+            }
+
+            final int[] numbers = new int[quoted.size()];
+            for(int i = 0; i < numbers.length; ++i)
+            {
+                numbers[i] = quoted.get(i).numQuotes;
+            }
+
+            String worldGroup = PluginState.getWorldConfig().getGroupFromWorld(menu.getPlayer().getWorld());
+            PluginState.getQuoteService().quote(worldGroup, baskets.toArray(new ItemStack[0][]), Simulator.TransactionType.SELL, new QuoteListener()
+            {
+                public void onQuote(Quote[] quotes)
+                {
+                    for(int i = 0; i < numbers.length; ++i)
+                    {
+                        KeyQuote keyQuote = quoted.get(i);
+                        if(numbers[i] == keyQuote.numQuotes)
+                        {   // The placed items of the key did not change since
+                            keyQuote.quote = quotes[i];
+                            keyQuote.shownQuote = numbers[i];
+                        }
+                    }
+
+                    showTotal(menu);
+                }
+            });
+        }
+
+        /**
+         * Get the total of the quotes of the placed items, if all of them still hold.
+         * @param worldGroup The world group the items are sold in.
+         * @return The total price, or null if a placed item is not quoted, or its
+         * quote does not hold anymore.
+         */
+        private Double getQuotedTotal(String worldGroup)
+        {
+            if(placedItems.hasChangedKeys())
+            {   // The latest placed items were not quoted yet
+                return null;
+            }
+
+            double total = 0;
+            for(int key : placedItems.getKeys())
+            {
+                KeyQuote keyQuote = keyQuotes.get(key);
+                if(keyQuote == null || keyQuote.shownQuote != keyQuote.numQuotes 
+                    || !keyQuote.quote.getWorldGroup().equals(worldGroup)
+                    || !PluginState.getSimulator().isCurrent(keyQuote.quote))
+                {
+                    return null;
+                }
+                total += keyQuote.quote.getPrice();
+            }
+
+            return total;
         }
 
+        /**
+         * Show the total price of the placed items on the button, unless
+         * a quote is still under way.
+         * @param menu The menu.
+         */
+        private void showTotal(Menu menu)
+        {
+            if(placedItems.size() == 0)
+            {
+                button.setDescription(Utils.prepareDescription("buttonDescriptions.confirmSale"));
+                menu.updateInventory();
+                return;
+            }
+
+            double total = 0;
+            for(int key : placedItems.getKeys())
+            {
+                KeyQuote keyQuote = keyQuotes.get(key);
+                if(keyQuote == null || keyQuote.shownQuote != keyQuote.numQuotes)
+                {   // The total is shown once this quote is in
+                    return;
+                }
+                total += keyQuote.quote.getPrice();
+            }
+
+            button.setDescription(Utils.prepareDescription("buttonDescriptions.confirmSaleWithPrice", 
+                "%amount", placedItems.size(), 
+                "%value", total, 
+                "%currencySingular", EconomySim.economy.currencyNameSingular(), 
+                "%currencyPlural", EconomySim.economy.currencyNamePlural()));
+
+            menu.updateInventory();
+        }
     }
 
     public final int NUM_ROWS = 6;
@@ -156,8 +339,13 @@ public class CustomerSellMenu extends ShopMenu implements MenuListener
         this.setButton(NUM_ROWS*9-2, cancelButton);
 
         MenuButton confirmButton = new MenuButton(Material.EMERALD_BLOCK, "Confirm", Utils.prepareDescription("buttonDescriptions.confirmSale"));
-        confirmButton.setListener(new ConfirmMenuButtonListener());
         this.setButton(NUM_ROWS*9-1, confirmButton);
+        ConfirmMenuButtonListener confirmListener = new ConfirmMenuButtonListener(confirmButton, this.getPlacedItemSet());
+        confirmButton.setListener(confirmListener);
+
+        // The sale price depends on the demand of the items placed
+        String worldGroup = PluginState.getWorldConfig().getGroupFromWorld(player.getWorld());
+        PluginState.getPlugin().getMenuIndex().register(this, confirmListener, worldGroup);
     }
 
     /*
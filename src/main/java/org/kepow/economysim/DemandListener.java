@@ -0,0 +1,18 @@
+package org.kepow.economysim;
+
+/**
+ * Interface representing a listener to changes in the demand of items in a world
+ * group, registered with the {@link MenuIndex}.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public interface DemandListener 
+{
+    /**
+     * Called on the main thread when the demand of items changed.
+     * @param menu The menu the listener was registered for.
+     * @param changed The item keys of the items listened to whose demand changed.
+     */
+    public void onDemandChange(Menu menu, ItemKeyIndex changed);
+}
@@ -0,0 +1,224 @@
+package org.kepow.economysim;
+
+import java.util.Arrays;
+
+/**
+ * Class representing the columnar demand store of a world group. 
+ * The buy and sale movement of all tracked items are kept in two 
+ * arrays, indexed by the item's slot.
+ * 
+ * Decay can either be performed eagerly on all items at once, or lazily: 
+ * each slot then remembers the time it was last decayed at, and the decay 
+ * that has accumulated since is applied in closed form when the slot is 
+ * read or written.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class DemandStore extends ItemKeyIndex
+{
+    private static final double MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private double[] buyMovement;
+    private double[] saleMovement;
+    private long[] lastDecay;
+
+    // Natural logarithm of the fraction of movement remaining after a millisecond.
+    // Both are 0 when decay is not performed lazily.
+    private double buyDecayRate = 0;
+    private double saleDecayRate = 0;
+
+    /**
+     * Constructor.
+     */
+    public DemandStore()
+    {
+        super();
+        buyMovement = new double[capacity()];
+        saleMovement = new double[capacity()];
+        lastDecay = new long[capacity()];
+    }
+
+    /**
+     * Copy constructor.
+     * @param demandStore DemandStore to copy.
+     */
+    public DemandStore(DemandStore demandStore)
+    {
+        super(demandStore);
+        buyMovement = demandStore.buyMovement.clone();
+        saleMovement = demandStore.saleMovement.clone();
+        lastDecay = demandStore.lastDecay.clone();
+        buyDecayRate = demandStore.buyDecayRate;
+        saleDecayRate = demandStore.saleDecayRate;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.ItemKeyIndex#resize(int)
+     */
+    @Override
+    protected void resize(int capacity)
+    {
+        super.resize(capacity);
+        buyMovement = Arrays.copyOf(buyMovement, capacity);
+        saleMovement = Arrays.copyOf(saleMovement, capacity);
+        lastDecay = Arrays.copyOf(lastDecay, capacity);
+    }
+
+    /**
+     * Set the rates with which movement is decayed lazily. The new rates 
+     * apply to all time that has passed since a slot was last decayed. 
+     * @param buyDecayPerDay The fraction of buy movement that decays each day.
+     * @param saleDecayPerDay The fraction of sale movement that decays each day.
+     */
+    public void setLazyDecay(double buyDecayPerDay, double saleDecayPerDay)
+    {
+        this.buyDecayRate = Math.log(1 - buyDecayPerDay) / MILLIS_PER_DAY;
+        this.saleDecayRate = Math.log(1 - saleDecayPerDay) / MILLIS_PER_DAY;
+    }
+
+    /**
+     * Disable lazy decay. Movement will only change through 
+     * {@link #decay(double, double)}.
+     */
+    public void disableLazyDecay()
+    {
+        this.buyDecayRate = 0;
+        this.saleDecayRate = 0;
+    }
+
+    /**
+     * Apply lazy decay to a movement value.
+     * @param movement The movement at the time it was last decayed.
+     * @param rate The decay rate.
+     * @param elapsed The milliseconds elapsed since the movement was last decayed.
+     * @return The decayed movement.
+     */
+    private static double decayed(double movement, double rate, long elapsed)
+    {
+        if(elapsed <= 0 || rate == 0)
+        {
+            return movement;
+        }
+
+        // (1-decayDay)^(elapsed/day) == e^(ln(1-decayDay)/day * elapsed)
+        return movement * Math.exp(rate * elapsed);
+    }
+
+    /**
+     * Find the slot of an item, adding it if it is not present yet, and
+     * bring its movement up to date.
+     * @param key The item key.
+     * @param now The current time in milliseconds.
+     * @return The slot.
+     */
+    private int settle(int key, long now)
+    {
+        int numSlots = size();
+        int slot = getOrAddSlot(key);
+        if(slot == numSlots)
+        {   // New slot
+            lastDecay[slot] = now;
+            return slot;
+        }
+
+        long elapsed = now - lastDecay[slot];
+        if(elapsed > 0)
+        {
+            buyMovement[slot] = decayed(buyMovement[slot], buyDecayRate, elapsed);
+            saleMovement[slot] = decayed(saleMovement[slot], saleDecayRate, elapsed);
+            lastDecay[slot] = now;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Add buy movement of an item.
+     * @param key The item key.
+     * @param movement The amount to add.
+     * @param now The current time in milliseconds.
+     */
+    public void addBuyMovement(int key, double movement, long now)
+    {
+        int slot = settle(key, now);
+        buyMovement[slot] += movement;
+    }
+
+    /**
+     * Add sale movement of an item.
+     * @param key The item key.
+     * @param movement The amount to add.
+     * @param now The current time in milliseconds.
+     */
+    public void addSaleMovement(int key, double movement, long now)
+    {
+        int slot = settle(key, now);
+        saleMovement[slot] += movement;
+    }
+
+    /**
+     * Get the demand (i.e., buyMovement - saleMovement) of an item.
+     * @param key The item key.
+     * @param now The current time in milliseconds.
+     * @return The demand, or 0 if the item is not tracked.
+     */
+    public double getDemand(int key, long now)
+    {
+        int slot = indexOf(key);
+        if(slot < 0)
+        {
+            return 0;
+        }
+
+        return getBuyMovement(slot, now) - getSaleMovement(slot, now);
+    }
+
+    /**
+     * Get the buy movement of a slot.
+     * @param slot The slot (0 &lt;= slot &lt; size()).
+     * @param now The current time in milliseconds.
+     * @return The buy movement.
+     */
+    public double getBuyMovement(int slot, long now)
+    {
+        return decayed(buyMovement[slot], buyDecayRate, now - lastDecay[slot]);
+    }
+
+    /**
+     * Get the sale movement of a slot.
+     * @param slot The slot (0 &lt;= slot &lt; size()).
+     * @param now The current time in milliseconds.
+     * @return The sale movement.
+     */
+    public double getSaleMovement(int slot, long now)
+    {
+        return decayed(saleMovement[slot], saleDecayRate, now - lastDecay[slot]);
+    }
+
+    /**
+     * Decay the movement of all tracked items. For example, if a decay is 0.05, 
+     * then 5% of the movement will be removed.
+     * @param buyDecay Factor to decay buy movement with.
+     * @param saleDecay Factor to decay sale movement with.
+     */
+    public void decay(double buyDecay, double saleDecay)
+    {
+        int size = size();
+
+        double buyFactor = 1 - buyDecay;
+        double[] buyMovement = this.buyMovement;
+        for(int i = 0; i < size; ++i)
+        {
+            buyMovement[i] *= buyFactor;
+        }
+
+        double saleFactor = 1 - saleDecay;
+        double[] saleMovement = this.saleMovement;
+        for(int i = 0; i < size; ++i)
+        {
+            saleMovement[i] *= saleFactor;
+        }
+    }
+}
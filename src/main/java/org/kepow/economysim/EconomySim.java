@@ -1,14 +1,19 @@
 package org.kepow.economysim;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import net.milkbowl.vault.chat.Chat;
 import net.milkbowl.vault.economy.Economy;
 import net.milkbowl.vault.permission.Permission;
 
 import org.bukkit.Bukkit;
+import org.bukkit.World;
 import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -25,6 +30,13 @@ public final class EconomySim extends JavaPlugin
     public static Permission permissions = null;
     public static Chat chat = null;
     private List<Menu> openMenus;
+    private StorageBackend storage = null;
+    private StateSaver stateSaver = null;
+    private TransactionJournal journal = null;
+    private boolean movementFlushScheduled = false;
+    private MenuIndex menuIndex;
+    private BuyCatalogues buyCatalogues;
+    private PlayerNameIndex playerNameIndex;
 
     /**
      * Called when the plugin has been loaded and is enabled.
@@ -33,6 +45,8 @@ public final class EconomySim extends JavaPlugin
     public void onEnable()
     {
         this.openMenus = new ArrayList<Menu>();
+        this.menuIndex = new MenuIndex();
+        this.buyCatalogues = new BuyCatalogues();
 
         this.saveDefaultConfig();
         ConfigurationSerialization.registerClass(ShopList.class);
@@ -76,9 +90,45 @@ public final class EconomySim extends JavaPlugin
             net.citizensnpcs.api.CitizensAPI.getTraitFactory().registerTrait(net.citizensnpcs.api.trait.TraitInfo.create(EconomySimMerchantTrait.class).withName("economysim"));
         }
 
+        // Open storage. If the configured backend holds no state yet, the state 
+        // is loaded from the files and saved to the backend on the next save.
+        YamlStorageBackend fileStorage = new YamlStorageBackend(
+            PluginState.getShopsCustomConfig(), 
+            PluginState.getSimulatorCustomConfig(),
+            new SimulatorFile(
+                new File(getDataFolder(), "simulator.dat"), 
+                getConfig().getBoolean("simulator.memoryMapped", false)),
+            getConfig().getString("simulator.format", "yaml").equalsIgnoreCase("binary"));
+
+        if(getConfig().getString("storage.backend", "yaml").equalsIgnoreCase("sqlite"))
+        {
+            storage = new SqliteStorageBackend(new File(getDataFolder(), "economysim.db"));
+        }
+        else
+        {
+            storage = fileStorage;
+        }
+
         // Load shops
-        ShopList shops = (ShopList) PluginState.getShopsCustomConfig().getCustomConfig().get("shopList", ShopList.class);
-        PluginState.setShopList(shops);
+        StorageBackend source;
+        try
+        {
+            storage.open();
+            source = storage.hasData() ? storage : fileStorage;
+
+            ShopList shops = source.loadShops();
+            if(source != storage)
+            {   // Write all shops to the configured backend on the next save
+                shops.markAllChanged();
+            }
+            PluginState.setShopList(shops);
+        }
+        catch (IOException e)
+        {
+            getLogger().severe(String.format("[%s] - Disabled due to unreadable storage: %s", getDescription().getName(), e.getMessage()));
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
 
         // Load item config
         ItemConfig itemConfig = new ItemConfig(PluginState.getItemsCustomConfig().getCustomConfig().getConfigurationSection("itemGroups").getValues(false));
@@ -89,17 +139,59 @@ public final class EconomySim extends JavaPlugin
         WorldConfig worldConfig = new WorldConfig(getConfig().getConfigurationSection("worldConfig").getValues(false));
         PluginState.setWorldConfig(worldConfig);
 
+        for(World world : getServer().getWorlds())
+        {
+            worldConfig.registerWorld(world);
+        }
+        getServer().getPluginManager().registerEvents(new WorldListener(), this);
+        getServer().getPluginManager().registerEvents(new MenuEventDispatcher(), this);
+
+        // Index player names; online players first, as they are known without reading player data
+        playerNameIndex = new PlayerNameIndex();
+        for(Player player : getServer().getOnlinePlayers())
+        {
+            playerNameIndex.add(player);
+        }
+        getServer().getPluginManager().registerEvents(new PlayerListener(), this);
+        Bukkit.getScheduler().runTaskAsynchronously(this, new Runnable()
+        {
+            public void run()
+            {
+                playerNameIndex.addAll(getServer().getOfflinePlayers());
+            }
+        });
+
         // Load simulator
         Simulator simulator = null;
-        if(PluginState.getSimulatorCustomConfig().getCustomConfig().contains("simulator"))
+        try
         {
-            simulator = (Simulator) PluginState.getSimulatorCustomConfig().getCustomConfig().get("simulator");
+            simulator = source.loadSimulator();
+
+            // Decay settings must be in place before replayed movement is added
+            simulator.setDecayPerDay(
+                getConfig().getDouble("simulator.buyDecayPerDay"), 
+                getConfig().getDouble("simulator.saleDecayPerDay"));
+            simulator.setLazyDecay(getConfig().getBoolean("simulator.lazyDecay", false));
+            PluginState.setSimulator(simulator);
+
+            // Recover movement recorded since the simulator was saved
+            if(getConfig().getBoolean("simulator.journal.enabled", false))
+            {
+                journal = new TransactionJournal(
+                    new File(getDataFolder(), "journal"), 
+                    getConfig().getLong("simulator.journal.flushInterval", 1000));
+                journal.open(simulator);
+                simulator.setJournal(journal);
+            }
         }
-        else
+        catch (IOException e)
         {
-            simulator = new Simulator();
+            getLogger().severe(String.format("[%s] - Disabled due to unreadable simulator: %s", getDescription().getName(), e.getMessage()));
+            getServer().getPluginManager().disablePlugin(this);
+            return;
         }
-        PluginState.setSimulator(simulator);
+        stateSaver = new StateSaver(storage, journal);
+        PluginState.setQuoteService(new QuoteService(this, getConfig().getInt("simulator.quoteThreads", 2)));
 
         // Set up scheduled task
         final long sleep = 20*60*5;
@@ -122,31 +214,18 @@ public final class EconomySim extends JavaPlugin
         long day = 20*60*60*24;
         double intervalsPerDay = day/interval;
 
-        // TODO: use per world buy decay
-        
-        double buyDecayDay = getConfig().getDouble("simulator.buyDecayPerDay");
-        double sellDecayDay = getConfig().getDouble("simulator.saleDecayPerDay");
+        PluginState.getSimulator().performPeriodicDecay(1/intervalsPerDay);
 
-        // (1-decayInterval)^intervalsPerDay == (1-decayDay)
-        // 1-decayInterval = (1-decayDay)^(1/intervalsPerDay)
-        // decayInterval = 1-(1-decayDay)^(1/intervalsPerDay)
-
-        double buyDecayInterval = 1-Math.pow(1-buyDecayDay, 1/intervalsPerDay);
-        double sellDecayInterval = 1-Math.pow(1-sellDecayDay, 1/intervalsPerDay);
-        
-        PluginState.getSimulator().performDecay(buyDecayInterval, sellDecayInterval);
+        // Show the decayed prices; with lazy decay, prices decayed since the last time
+        buyCatalogues.invalidate();
     }
 
     /**
-     * Save the plugin state to files.
+     * Save the plugin state to files in the background.
      */
     private void save()
     {
-        PluginState.getShopsCustomConfig().getCustomConfig().set("shopList", PluginState.getShopList());
-        PluginState.getShopsCustomConfig().saveCustomConfig();
-
-        PluginState.getSimulatorCustomConfig().getCustomConfig().set("simulator", PluginState.getSimulator());
-        PluginState.getSimulatorCustomConfig().saveCustomConfig();
+        stateSaver.save();
     }
 
     /**
@@ -162,7 +241,22 @@ public final class EconomySim extends JavaPlugin
             openMenus.get(0).close();
         }
 
-        save();
+        if(PluginState.getQuoteService() != null)
+        {
+            PluginState.getQuoteService().shutdown();
+        }
+        if(stateSaver != null)
+        {   // The state was loaded, write it to files before disabling
+            stateSaver.flush();
+        }
+        if(journal != null)
+        {
+            journal.close();
+        }
+        if(storage != null)
+        {
+            storage.close();
+        }
     }
 
     /**
@@ -181,19 +275,72 @@ public final class EconomySim extends JavaPlugin
     public void deregisterMenu(Menu menu)
     {
         openMenus.remove(menu);
+        menuIndex.deregister(menu);
+    }
+
+    /**
+     * Flush the pending transaction movement at the end of the current tick,
+     * and let the affected menu buttons update once afterwards.
+     */
+    public void scheduleMovementFlush()
+    {
+        if(movementFlushScheduled)
+        {
+            return;
+        }
+        movementFlushScheduled = true;
+
+        Bukkit.getScheduler().runTask(this, new Runnable()
+        {
+            public void run()
+            {
+                movementFlushScheduled = false;
+                flushMovement();
+            }
+        });
     }
 
     /**
-     * Call to let all open menus update.
+     * Flush the pending transaction movement, and let the menu buttons
+     * showing the prices of the affected items update.
      */
-    public void updateAllMenus()
+    public void flushMovement()
     {
-        for(Menu menu : openMenus)
+        Map<String, ItemKeyIndex> flushed = PluginState.getSimulator().flushMovement();
+        if(!flushed.isEmpty())
         {
-            menu.updateButtons();
+            buyCatalogues.update(flushed);
+            menuIndex.update(flushed);
         }
     }
 
+    /**
+     * Get the index of the menu buttons showing prices.
+     * @return The menu index.
+     */
+    public MenuIndex getMenuIndex()
+    {
+        return menuIndex;
+    }
+
+    /**
+     * Get the buy catalogues of the shops.
+     * @return The buy catalogues.
+     */
+    public BuyCatalogues getBuyCatalogues()
+    {
+        return buyCatalogues;
+    }
+
+    /**
+     * Get the index of player names.
+     * @return The player name index.
+     */
+    public PlayerNameIndex getPlayerNameIndex()
+    {
+        return playerNameIndex;
+    }
+
     private boolean setupEconomy() 
     {
         if (getServer().getPluginManager().getPlugin("Vault") == null) 
@@ -105,6 +105,7 @@ public class EconomySimCommandExecutor implements CommandExecutor
                     if(shop.canManage(player))
                     {
                         PluginState.getShopList().remove(shopName);
+                        PluginState.getPlugin().getBuyCatalogues().remove(shop);
                         sender.sendMessage(Utils.prepareMessage("commands.shopRemoved", "%shop", shopName));
                     }
                     else
@@ -1,9 +1,9 @@
 package org.kepow.economysim;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.bukkit.Material;
 import org.bukkit.configuration.MemorySection;
 import org.bukkit.inventory.ItemStack;
 
@@ -19,8 +19,8 @@ public class ItemConfig
      * Class that represents an "item map". For example, the diamond block ItemStack
      * might map to an ItemMap with as ItemStack diamond (non-block) and relativeValue 9.
      * 
-     * Another example are damaged tools, that might map to an ItemMap with as item the
-     * non-damaged tool and a health of, e.g., 0.6, if the tool was damaged 60%.
+     * Item maps are shared between all lookups of the items mapping to them, and 
+     * should not be modified.
      * 
      * @author Thomas Churchman
      *
@@ -28,8 +28,8 @@ public class ItemConfig
     public class ItemMap
     {
         private ItemStack item;
+        private int key;
         private double relativeValue;
-        private double health;
 
         /**
          * Constructor.
@@ -45,32 +45,11 @@ public class ItemConfig
          * @param item The item stack the map should represent.
          * @param relativeValue The relative value of the original item to the item stack represented by the map.
          */
-        public ItemMap(ItemStack item, int relativeValue)
-        {
-            this(item, relativeValue, 1.0);
-        }
-
-        /**
-         * Constructor.
-         * @param item The item stack the map should represent.
-         * @param health The health of the original item (the item stack represented should always have a health of 100%).
-         */
-        public ItemMap(ItemStack item, double health)
-        {
-            this(item, 1, health);
-        }
-
-        /**
-         * Constructor.
-         * @param item The item stack the map should represent.
-         * @param relativeValue The relative value of the original item to the item stack represented by the map.
-         * @param health The health of the original item (the item stack represented should always have a health of 100%).
-         */
-        public ItemMap(ItemStack item, double relativeValue, double health)
+        public ItemMap(ItemStack item, double relativeValue)
         {
             this.item = item;
+            this.key = ItemKey.of(item);
             this.relativeValue = relativeValue;
-            this.health = health;
         }
 
         /**
@@ -80,18 +59,7 @@ public class ItemConfig
          */
         public ItemMap(Tuple<ItemStack, Double> map)
         {
-            this(map, 1.0);
-        }
-
-        /**
-         * Constructor.
-         * @param map A tuple containing an item stack the map should represent and the relative value of the original item 
-         * to the item stack represented by the map. 
-         * @param health The health of the original item (the item stack represented should always have a health of 100%).
-         */
-        public ItemMap(Tuple<ItemStack, Double> map, double health)
-        {
-            this(map.t1, map.t2, health);
+            this(map.t1, map.t2);
         }
 
         public ItemStack getItem()
@@ -99,14 +67,18 @@ public class ItemConfig
             return this.item;
         }
 
-        public double getRelativeValue()
+        /**
+         * Get the item key of the item stack represented by the map.
+         * @return The item key.
+         */
+        public int getKey()
         {
-            return this.relativeValue;
+            return this.key;
         }
 
-        public double getHealth()
+        public double getRelativeValue()
         {
-            return this.health;
+            return this.relativeValue;
         }
 
         @Override
@@ -118,24 +90,27 @@ public class ItemConfig
             }
 
             ItemMap otherMap = (ItemMap) other;
-            return otherMap.item.equals(this.item) && otherMap.relativeValue == this.relativeValue && otherMap.health == this.health;
+            return otherMap.key == this.key && otherMap.relativeValue == this.relativeValue;
         }
 
         @Override
         public int hashCode()
         {
             int hash = 1;
-            hash = hash * 17 + item.toString().hashCode();
+            hash = hash * 17 + key;
             hash = hash * 31 + (int) (relativeValue * 100);
-            hash = hash * 13 + (int) (health * 100);
 
             return hash;
         }
     }
 
-    private Map<ItemStack, String> mapToGroup;
-    private Map<String, Boolean> groupAllDataTypes;
-    private Map<ItemStack, Tuple<ItemStack, Double>> mapTo;
+    // Maps of configured items
+    private ItemKeyMap<ItemMap> mappings;
+    // Maps of items without data/damage information, used for any data/damage
+    // type of items in groups defined for all data/damage types and of tools
+    private ItemKeyMap<ItemMap> bareMappings;
+    // Maps of items that map to themselves, created on first lookup
+    private ItemKeyMap<ItemMap> identityMappings;
 
     /**
      * Constructor.
@@ -143,9 +118,9 @@ public class ItemConfig
      */
     public ItemConfig(Map<String, Object> itemGroupsData)
     {
-        mapToGroup = new HashMap<ItemStack, String>();
-        groupAllDataTypes = new HashMap<String, Boolean>();
-        mapTo = new HashMap<ItemStack, Tuple<ItemStack, Double>>();
+        mappings = new ItemKeyMap<ItemMap>();
+        bareMappings = new ItemKeyMap<ItemMap>();
+        identityMappings = new ItemKeyMap<ItemMap>();
 
         for(String group : itemGroupsData.keySet())
         {
@@ -154,8 +129,6 @@ public class ItemConfig
             List<Map<?,?>> items = groupData.getMapList("items");
 
             boolean groupAllDataTypes = groupData.getBoolean("allDataTypes");
-            this.groupAllDataTypes.put(group, groupAllDataTypes);
-
 
             //List<Map<?, ?>> items = (List<Map<?, ?>>) itemGroupData.get("items");
             if(items.size() > 0)
@@ -165,7 +138,6 @@ public class ItemConfig
                 for(Map<?, ?> item : items)
                 {
                     ItemStack itemStack = (ItemStack) item.get("item");
-                    mapToGroup.put(itemStack, group);
                     double relativeValue = 1;
 
                     if(item.containsKey("relativeValue"))
@@ -173,66 +145,79 @@ public class ItemConfig
                         relativeValue = ((Number) item.get("relativeValue")).doubleValue();
                     }
 
-                    mapTo.put(itemStack, new Tuple<ItemStack,Double>(prototypeItem, relativeValue));
+                    int key = ItemKey.of(itemStack);
+                    ItemMap map = new ItemMap(prototypeItem, relativeValue);
+                    mappings.put(key, map);
+
+                    if(itemStack.getDurability() == 0 
+                        && (groupAllDataTypes || itemStack.getType().getMaxDurability() != 0))
+                    {
+                        bareMappings.put(key, map);
+                    }
                 }
             }
         }
     }
 
     /**
-     * Get the mapping of an item stack.
+     * Get the mapping of an item stack. The item stack is not modified.
      * @param item The item stack to get the mapping for.
      * @return An ItemMap containing the item stack the input item stack maps to
-     * the quantitative value relative to the item stack it maps to and the 
-     * durability of the item, if relevant.
+     * and the quantitative value relative to the item stack it maps to.
      */
     public ItemMap getMapping(ItemStack item)
     {
-        short max = item.getType().getMaxDurability();
-        double health = 1.0;
-        if(max != 0)
-        {	// The item has durability
-            health = (double) (max - item.getDurability()) / (double) max;						
-        }
+        return getMapping(ItemKey.of(item));
+    }
 
-        if(mapTo.containsKey(item))
+    /**
+     * Get the mapping of an item.
+     * @param key The item key of the item to get the mapping for.
+     * @return An ItemMap containing the item stack the input item maps to
+     * and the quantitative value relative to the item stack it maps to.
+     */
+    public ItemMap getMapping(int key)
+    {
+        ItemMap map = mappings.get(key);
+        if(map != null)
         {	// We found a mapping for this item.
-            return new ItemMap(mapTo.get(item), health);
+            return map;
         }
-        else
-        {	// No "simple" mapping was found, check if we have a mapping
-            // when we discard item data/damage information and whether that
-            // group is defined for all item data/damage types.
-            ItemStack checkItem = item;
-            checkItem.setDurability((short) 0);
 
-            if(mapToGroup.containsKey(checkItem))
-            {	// A group exists for the "bare" item
+        // No "simple" mapping was found, check if we have a mapping
+        // when we discard item data/damage information and whether that
+        // group is defined for all item data/damage types.
+        Material material = ItemKey.getMaterial(key);
+        int bareKey = ItemKey.of(material, (short) 0);
+
+        map = bareMappings.get(bareKey);
+        if(map != null)
+        {
+            return map;
+        }
 
-                String group = mapToGroup.get(checkItem);
+        // No mapping exists, the item maps to itself without its
+        // data/damage information.
+        return getIdentityMapping(bareKey);
+    }
 
-                if(groupAllDataTypes.get(group))
-                {	// The group is defined for all item data/damage types.
-                    return new ItemMap(mapTo.get(checkItem), health);
-                }
-                else
-                {	
-                    if(max != 0)
-                    {	// The item has durability
-                        return new ItemMap(mapTo.get(checkItem), health);						
-                    }
-                    else
-                    {	// The group is not defined for all item data/damage types,
-                        // return the original item.
-                        return new ItemMap(item, health);
-                    }
-                }
-            }
-            else
-            {	// No group exists for the "bare" item either,
-                // return the original item.
-                return new ItemMap(item, health);
+    /**
+     * Get the mapping of an item onto itself.
+     * @param key The item key of the item.
+     * @return The ItemMap of the item onto itself.
+     */
+    private ItemMap getIdentityMapping(int key)
+    {
+        synchronized(identityMappings)
+        {
+            ItemMap map = identityMappings.get(key);
+            if(map == null)
+            {
+                map = new ItemMap(ItemKey.toItemStack(key));
+                identityMappings.put(key, map);
             }
+
+            return map;
         }
     }
 }
@@ -0,0 +1,74 @@
+package org.kepow.economysim;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Class that provides compact item keys. An item key identifies an item
+ * by its material and data (damage) value, packed into a single int: 
+ * the material's ordinal in the upper 16 bits and the data value in 
+ * the lower 16 bits. Item meta, such as names, enchantments and lore, 
+ * is not part of the key.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public final class ItemKey 
+{
+    private static final Material[] MATERIALS = Material.values();
+
+    private ItemKey()
+    {
+    }
+
+    /**
+     * Get the item key of a material and data value.
+     * @param material The material.
+     * @param data The data value.
+     * @return The item key.
+     */
+    public static int of(Material material, short data)
+    {
+        return (material.ordinal() << 16) | (data & 0xFFFF);
+    }
+
+    /**
+     * Get the item key of an item stack.
+     * @param item The item stack.
+     * @return The item key.
+     */
+    public static int of(ItemStack item)
+    {
+        return of(item.getType(), item.getDurability());
+    }
+
+    /**
+     * Get the material of an item key.
+     * @param key The item key.
+     * @return The material.
+     */
+    public static Material getMaterial(int key)
+    {
+        return MATERIALS[key >>> 16];
+    }
+
+    /**
+     * Get the data value of an item key.
+     * @param key The item key.
+     * @return The data value.
+     */
+    public static short getData(int key)
+    {
+        return (short) (key & 0xFFFF);
+    }
+
+    /**
+     * Create an item stack of a single item from an item key.
+     * @param key The item key.
+     * @return The item stack.
+     */
+    public static ItemStack toItemStack(int key)
+    {
+        return new ItemStack(getMaterial(key), 1, getData(key));
+    }
+}
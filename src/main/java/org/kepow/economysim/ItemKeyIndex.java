@@ -0,0 +1,177 @@
+package org.kepow.economysim;
+
+import java.util.Arrays;
+
+/**
+ * Class representing an index from item keys to dense slots, using open 
+ * addressing with linear probing. Slots are handed out in insertion order, 
+ * so subclasses can store their values in arrays indexed by slot. Keys 
+ * cannot be removed.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class ItemKeyIndex 
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Hash table of slots + 1; 0 marks an empty bucket.
+    private int[] table;
+    private int[] keys;
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public ItemKeyIndex()
+    {
+        table = new int[INITIAL_CAPACITY * 2];
+        keys = new int[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Copy constructor.
+     * @param index ItemKeyIndex to copy.
+     */
+    public ItemKeyIndex(ItemKeyIndex index)
+    {
+        table = index.table.clone();
+        keys = index.keys.clone();
+        size = index.size;
+    }
+
+    /**
+     * Spread the bits of a key to get a bucket.
+     * @param key The item key.
+     * @param mask The table mask.
+     * @return The bucket.
+     */
+    private static int bucket(int key, int mask)
+    {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Find the slot of a key.
+     * @param key The item key.
+     * @return The slot, or -1 if the key is not present.
+     */
+    public int indexOf(int key)
+    {
+        int mask = table.length - 1;
+        int bucket = bucket(key, mask);
+
+        while(true)
+        {
+            int entry = table[bucket];
+            if(entry == 0)
+            {
+                return -1;
+            }
+            if(keys[entry - 1] == key)
+            {
+                return entry - 1;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    /**
+     * Test if the index contains a key.
+     * @param key The item key.
+     * @return True if the index contains the key, false otherwise.
+     */
+    public boolean containsKey(int key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Find the slot of a key, adding the key if it is not present yet.
+     * @param key The item key.
+     * @return The slot.
+     */
+    public int getOrAddSlot(int key)
+    {
+        int slot = indexOf(key);
+        if(slot >= 0)
+        {
+            return slot;
+        }
+
+        if(size == keys.length)
+        {
+            resize(keys.length * 2);
+        }
+
+        slot = size;
+        keys[slot] = key;
+        insert(key, slot);
+        ++size;
+
+        return slot;
+    }
+
+    /**
+     * Insert a slot into the hash table.
+     * @param key The item key.
+     * @param slot The slot.
+     */
+    private void insert(int key, int slot)
+    {
+        int mask = table.length - 1;
+        int bucket = bucket(key, mask);
+        while(table[bucket] != 0)
+        {
+            bucket = (bucket + 1) & mask;
+        }
+        table[bucket] = slot + 1;
+    }
+
+    /**
+     * Resize the index to hold the given number of slots, keeping the load 
+     * factor of the hash table at or below one half. Subclasses storing 
+     * values per slot should grow their arrays accordingly.
+     * @param capacity The new number of slots.
+     */
+    protected void resize(int capacity)
+    {
+        keys = Arrays.copyOf(keys, capacity);
+
+        table = new int[capacity * 2];
+        for(int i = 0; i < size; ++i)
+        {
+            insert(keys[i], i);
+        }
+    }
+
+    /**
+     * Get the number of slots in use.
+     * @return The number of slots in use.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Get the slot capacity.
+     * @return The slot capacity.
+     */
+    protected int capacity()
+    {
+        return keys.length;
+    }
+
+    /**
+     * Get the key of a slot.
+     * @param slot The slot (0 &lt;= slot &lt; size()).
+     * @return The item key.
+     */
+    public int getKey(int slot)
+    {
+        return keys[slot];
+    }
+}
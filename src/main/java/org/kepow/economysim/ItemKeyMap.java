@@ -0,0 +1,77 @@
+package org.kepow.economysim;
+
+import java.util.Arrays;
+
+/**
+ * Class representing a map from item keys to values. Entries are stored
+ * densely in insertion order, so they can be iterated over by slot.
+ * Entries cannot be removed.
+ * 
+ * @author Thomas Churchman
+ *
+ * @param <V> Type of the values contained in the map.
+ */
+public class ItemKeyMap<V> extends ItemKeyIndex
+{
+    private Object[] values;
+
+    /**
+     * Constructor.
+     */
+    public ItemKeyMap()
+    {
+        super();
+        values = new Object[capacity()];
+    }
+
+    /**
+     * Get the value of a key.
+     * @param key The item key.
+     * @return The value, or null if the key is not present.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key)
+    {
+        int slot = indexOf(key);
+        if(slot < 0)
+        {
+            return null;
+        }
+
+        return (V) values[slot];
+    }
+
+    /**
+     * Set the value of a key.
+     * @param key The item key.
+     * @param value The value.
+     */
+    public void put(int key, V value)
+    {
+        // Adding a slot may resize the value array
+        int slot = getOrAddSlot(key);
+        values[slot] = value;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.ItemKeyIndex#resize(int)
+     */
+    @Override
+    protected void resize(int capacity)
+    {
+        super.resize(capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    /**
+     * Get the value of a slot.
+     * @param slot The slot (0 &lt;= slot &lt; size()).
+     * @return The value.
+     */
+    @SuppressWarnings("unchecked")
+    public V getValue(int slot)
+    {
+        return (V) values[slot];
+    }
+}
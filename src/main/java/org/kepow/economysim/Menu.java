@@ -2,31 +2,30 @@ package org.kepow.economysim;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.bukkit.Bukkit;
 import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.EventPriority;
-import org.bukkit.event.HandlerList;
-import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryAction;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.event.inventory.InventoryOpenEvent;
 import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 
 /**
  * Class that wraps around Bukkit's Inventory to provide
- * a menu API.
+ * a menu API. The menu is the holder of its inventory, through
+ * which {@link MenuEventDispatcher} routes inventory events to it.
  * 
  * @author Thomas Churchman
  */
-public class Menu implements Listener
+public class Menu implements InventoryHolder
 {	
     private String name;
     private int size;
@@ -34,6 +33,10 @@ public class Menu implements Listener
 
     private List<MenuListener> listeners;
     private HashMap<Integer, MenuButton> buttons;
+    private HashMap<Integer, ItemStack> renderedItems;
+    private PlacedItems placedItems;
+    private Set<Integer> changedSlots;
+    private boolean allSlotsChanged;
     protected Inventory inventory = null;
 
     private Player player;
@@ -44,11 +47,13 @@ public class Menu implements Listener
      */
     public Menu(Player player)
     {
-        PluginState.getPlugin().getServer().getPluginManager().registerEvents(this, PluginState.getPlugin());
-
         listeners = new ArrayList<MenuListener>();
 
         buttons = new HashMap<Integer, MenuButton>();
+        renderedItems = new HashMap<Integer, ItemStack>();
+        placedItems = new PlacedItems();
+        changedSlots = new HashSet<Integer>();
+        allSlotsChanged = true;
         name = "Inventory";
         size = 9;
         allowPlaceItems = false;
@@ -64,7 +69,7 @@ public class Menu implements Listener
         String nameSubstr = name.substring(0, Math.min(name.length(), 32));
         if(inventory == null)
         {
-            inventory = Bukkit.createInventory(null, size, nameSubstr);
+            inventory = Bukkit.createInventory(this, size, nameSubstr);
         }
     }
 
@@ -121,7 +126,7 @@ public class Menu implements Listener
         if(slotIsInBounds(slot))
         {
             buttons.put(slot, button);
-            inventory.setItem(slot, buttons.get(slot).getItem());
+            renderSlot(slot);
         }
     }	
 
@@ -199,13 +204,13 @@ public class Menu implements Listener
 
     /**
      * Update the inventory for all viewers.
-     * Resets all the buttons.
+     * Resets the buttons whose item changed since they were last set.
      */
     public void updateInventory()
     {
         for(int slot : buttons.keySet())
         {
-            inventory.setItem(slot, buttons.get(slot).getItem());
+            renderSlot(slot);
         }
         // for(HumanEntity human : inventory.getViewers())	
         // {
@@ -214,6 +219,24 @@ public class Menu implements Listener
         // }
     }
 
+    /**
+     * Set the item of the button at a slot in the inventory, unless the
+     * inventory already shows that item. Buttons change their item in place,
+     * so a copy of the item that was set is kept to compare with.
+     * @param slot The slot of the button.
+     */
+    private void renderSlot(int slot)
+    {
+        ItemStack item = buttons.get(slot).getItem();
+        ItemStack rendered = renderedItems.get(slot);
+
+        if(rendered == null || !rendered.equals(item))
+        {
+            inventory.setItem(slot, item);
+            renderedItems.put(slot, item.clone());
+        }
+    }
+
     /**
      * Close the inventory for all viewers.
      */
@@ -226,13 +249,13 @@ public class Menu implements Listener
         }
     }
 
-    /**
-     * Destroy this menu, should only be called when the menu inventory has been
-     * closed.
+    /*
+     * (non-Javadoc)
+     * @see org.bukkit.inventory.InventoryHolder#getInventory()
      */
-    private void destroy()
+    public Inventory getInventory()
     {
-        HandlerList.unregisterAll(this);
+        return inventory;
     }
 
     /**
@@ -243,7 +266,7 @@ public class Menu implements Listener
      */
     public ItemStack[] getPlacedItems()
     {
-        return getPlacedItemsAndSlots().values().toArray(new ItemStack[0]);
+        return getPlacedItemSet().getItems();
     }
 
     /**
@@ -263,39 +286,52 @@ public class Menu implements Listener
      */
     public HashMap<Integer, ItemStack> getPlacedItemsAndSlots()
     {
-        HashMap<Integer, ItemStack> items = new HashMap<Integer, ItemStack>();
-        for(int slot = 0; slot < size; ++slot)
+        return getPlacedItemSet().getItemsAndSlots();
+    }
+
+    /**
+     * Get the items placed in the inventory in this menu. Only the slots 
+     * that clicks and drags may have changed since the items were last
+     * gotten are read from the inventory.
+     * @return The placed items.
+     */
+    public PlacedItems getPlacedItemSet()
+    {
+        if(allSlotsChanged)
         {
-            if(!buttons.containsKey(slot))
+            for(int slot = 0; slot < size; ++slot)
             {
-                ItemStack item = inventory.getItem(slot);
-                if(item != null)
+                if(!buttons.containsKey(slot))
                 {
-                    items.put(slot, item);
+                    placedItems.set(slot, inventory.getItem(slot));
                 }
             }
         }
+        else
+        {
+            for(int slot : changedSlots)
+            {
+                placedItems.set(slot, inventory.getItem(slot));
+            }
+        }
+
+        allSlotsChanged = false;
+        changedSlots.clear();
 
-        return items;
+        return placedItems;
     }
 
     /**
      * Called when a player closes the inventory. 
      * @param event
      */
-    @EventHandler
     public void onInventoryClose(InventoryCloseEvent event) 
     {
-        if (event.getInventory().equals(this.inventory)) 
-        {
-            PluginState.getPlugin().deregisterMenu(this);
+        PluginState.getPlugin().deregisterMenu(this);
 
-            for(MenuListener listener : listeners)
-            {
-                listener.onMenuInventoryClose(this, event);
-            }
-
-            this.destroy();
+        for(MenuListener listener : listeners)
+        {
+            listener.onMenuInventoryClose(this, event);
         }
 
         //if (viewing.contains(event.getPlayer().getName()))
@@ -306,15 +342,11 @@ public class Menu implements Listener
      * Called when a player opens the inventory. 
      * @param event
      */
-    @EventHandler
     public void onInventoryOpen(InventoryOpenEvent event) 
     {
-        if (event.getInventory().equals(this.inventory)) 
+        for(MenuListener listener : listeners)
         {
-            for(MenuListener listener : listeners)
-            {
-                listener.onMenuInventoryOpen(this, event);
-            }
+            listener.onMenuInventoryOpen(this, event);
         }
     }
 
@@ -322,35 +354,40 @@ public class Menu implements Listener
      * Called when items are placed by being dragged in the inventory.
      * @param event
      */
-    @EventHandler(priority=EventPriority.MONITOR)
     public void onInventoryDrag(InventoryDragEvent event)
     {
-        if (event.getInventory().equals(this.inventory)) 
+        if(!allowPlaceItems)
         {
-            if(!allowPlaceItems)
+            Set<Integer> slots = event.getRawSlots();
+            for(int slot : slots)
             {
-                Set<Integer> slots = event.getRawSlots();
-                for(int slot : slots)
-                {
-                    if(slot >= 0 && slot < size)
-                    {	// Dragged inside shop inventory
-                        event.setCancelled(true);
-                        return;
-                    }
+                if(slot >= 0 && slot < size)
+                {	// Dragged inside shop inventory
+                    event.setCancelled(true);
+                    return;
                 }
             }
-            else
+        }
+        else
+        {
+            boolean draggedInside = false;
+            Set<Integer> slots = event.getRawSlots();
+            for(int slot : slots)
             {
-                Set<Integer> slots = event.getRawSlots();
-                for(int slot : slots)
-                {
-                    if(slot >= 0 && slot < size)
-                    {	// Dragged inside shop inventory
-                        updateButtons();
-                        return;
+                if(slot >= 0 && slot < size)
+                {	// Dragged inside shop inventory
+                    draggedInside = true;
+                    if(!buttons.containsKey(slot))
+                    {
+                        changedSlots.add(slot);
                     }
                 }
             }
+
+            if(draggedInside)
+            {
+                updateButtons();
+            }
         }
     }
 
@@ -358,84 +395,91 @@ public class Menu implements Listener
      * Called when the user clicks in the inventory.
      * @param event
      */
-    @EventHandler(priority=EventPriority.MONITOR)
     public void onInventoryClick(InventoryClickEvent event) 
     {
-        if (event.getInventory().equals(this.inventory)) 
-        {
-            int slot = event.getRawSlot();
-            InventoryAction action = event.getAction();
+        int slot = event.getRawSlot();
+        InventoryAction action = event.getAction();
 
-            if (slot >= 0 && slot < size) 
-            {	// Shop inventory was clicked
-                if(!allowPlaceItems)
-                {
+        if (slot >= 0 && slot < size) 
+        {	// Shop inventory was clicked
+            if(!allowPlaceItems)
+            {
+                event.setCancelled(true);
+            }
+            else
+            {
+                if(buttons.containsKey(slot))
+                {	// A button was clicked
                     event.setCancelled(true);
                 }
                 else
-                {
-                    if(buttons.containsKey(slot))
-                    {	// A button was clicked
-                        event.setCancelled(true);
-                    }
-                    else
-                    {	// The click was not on a button
-                        updateButtons();
+                {	// The click was not on a button
+                    changedSlots.add(slot);
+                    if(action == InventoryAction.COLLECT_TO_CURSOR)
+                    {   // Collecting may take items from any slot
+                        allSlotsChanged = true;
                     }
+                    updateButtons();
                 }
+            }
 
-                if(buttons.containsKey(slot))
-                {
-                    buttons.get(slot).onShopButtonClick(this, event);
-                }
+            if(buttons.containsKey(slot))
+            {
+                buttons.get(slot).onShopButtonClick(this, event);
             }
-            else if(slot >= size)
-            {	// Player inventory was clicked
-                if(!allowPlaceItems)
+        }
+        else if(slot >= size)
+        {	// Player inventory was clicked
+            if(!allowPlaceItems)
+            {
+                if(!(
+                    // (Enumerate all allowable actions as opposed to
+                    // illegal actions, to more easily avoid exploits
+                    // in favour of restrictions if/when more inventory 
+                    // actions are added in future versions.)   
+                    action == InventoryAction.PICKUP_ALL 
+                    || 
+                    action == InventoryAction.PICKUP_SOME 
+                    || 
+                    action == InventoryAction.PICKUP_HALF
+                    ||
+                    action == InventoryAction.PICKUP_ONE
+                    ||
+                    action == InventoryAction.PLACE_ALL
+                    ||
+                    action == InventoryAction.PLACE_SOME
+                    ||
+                    action == InventoryAction.PLACE_ONE
+                    ||
+                    action == InventoryAction.SWAP_WITH_CURSOR
+                    ||
+                    action == InventoryAction.DROP_ALL_CURSOR
+                    ||
+                    action == InventoryAction.DROP_ONE_CURSOR
+                    ||
+                    action == InventoryAction.DROP_ONE_SLOT
+                    ||
+                    action == InventoryAction.HOTBAR_MOVE_AND_READD
+                    ||
+                    action == InventoryAction.HOTBAR_SWAP
+                    ||
+                    action == InventoryAction.CLONE_STACK
+                    ||
+                    action == InventoryAction.COLLECT_TO_CURSOR
+                    ))
                 {
-                    if(!(
-                        // (Enumerate all allowable actions as opposed to
-                        // illegal actions, to more easily avoid exploits
-                        // in favour of restrictions if/when more inventory 
-                        // actions are added in future versions.)   
-                        action == InventoryAction.PICKUP_ALL 
-                        || 
-                        action == InventoryAction.PICKUP_SOME 
-                        || 
-                        action == InventoryAction.PICKUP_HALF
-                        ||
-                        action == InventoryAction.PICKUP_ONE
-                        ||
-                        action == InventoryAction.PLACE_ALL
-                        ||
-                        action == InventoryAction.PLACE_SOME
-                        ||
-                        action == InventoryAction.PLACE_ONE
-                        ||
-                        action == InventoryAction.SWAP_WITH_CURSOR
-                        ||
-                        action == InventoryAction.DROP_ALL_CURSOR
-                        ||
-                        action == InventoryAction.DROP_ONE_CURSOR
-                        ||
-                        action == InventoryAction.DROP_ONE_SLOT
-                        ||
-                        action == InventoryAction.HOTBAR_MOVE_AND_READD
-                        ||
-                        action == InventoryAction.HOTBAR_SWAP
-                        ||
-                        action == InventoryAction.CLONE_STACK
-                        ||
-                        action == InventoryAction.COLLECT_TO_CURSOR
-                        ))
-                    {
-                        event.setCancelled(true);
-                    }
+                    event.setCancelled(true);
                 }
-                else
-                {
-                    updateButtons();
+            }
+            else
+            {
+                if(action == InventoryAction.MOVE_TO_OTHER_INVENTORY
+                    || action == InventoryAction.COLLECT_TO_CURSOR
+                    || action == InventoryAction.UNKNOWN)
+                {   // Items may have been moved into or taken from any slot
+                    allSlotsChanged = true;
                 }
+                updateButtons();
             }
         }
     }
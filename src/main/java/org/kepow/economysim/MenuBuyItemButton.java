@@ -1,7 +1,5 @@
 package org.kepow.economysim;
 
-import java.util.Arrays;
-
 import net.milkbowl.vault.economy.EconomyResponse;
 
 import org.bukkit.entity.Player;
@@ -17,62 +15,27 @@ import org.bukkit.inventory.meta.ItemMeta;
  */
 public class MenuBuyItemButton extends MenuButton implements MenuButtonListener
 {
+    private BuyCatalogue catalogue;
+    private int slot;
     private ItemStack representedItem;
 
     /**
      * Constructor.
-     * @param menu The menu the button is for.
-     * @param itemStack The item stack the button should represent.
+     * @param catalogue The catalogue the button shows an item of.
+     * @param slot The slot of the item in the catalogue.
      */
-    public MenuBuyItemButton(Menu menu, ItemStack itemStack)
+    public MenuBuyItemButton(BuyCatalogue catalogue, int slot)
     {
-        super(itemStack, "");
+        super(catalogue.getRepresentedItem(slot), "");
 
-        this.representedItem = itemStack;
-        this.representedItem.setAmount(1);
+        this.catalogue = catalogue;
+        this.slot = slot;
+        this.representedItem = catalogue.getRepresentedItem(slot);
 
-        this.item = new ItemStack(this.representedItem);
+        // Share the item of the catalogue, which shows the quoted prices
+        this.item = catalogue.getItem(slot);
 
         this.setListener(this);
-
-        update(menu);
-    }
-
-    /**
-     * Recalculate prices.
-     */
-    public void update(Menu menu)
-    {
-        String worldGroup = PluginState.getWorldConfig().getGroupFromWorld(menu.getPlayer().getWorld());
-        double priceFor1 = PluginState.getSimulator().getTotalPrice(worldGroup, new ItemStack[]{this.representedItem}, Simulator.TransactionType.BUY);
-
-        ItemMeta meta = this.representedItem.getItemMeta();
-        this.setName(Utils.prepareMessage("buttonDescriptions.buy", "%item", item.getType().toString()));
-
-        int stackSize = item.getMaxStackSize();
-        if(stackSize > 1)
-        {
-            ItemStack stacked = new ItemStack(this.representedItem);
-            stacked.setAmount(stackSize);
-            double stackedPrice = PluginState.getSimulator().getTotalPrice(worldGroup, new ItemStack[]{stacked}, Simulator.TransactionType.BUY);
-
-            meta.setLore(Arrays.asList(Utils.prepareDescription("buttonDescriptions.buyStack", 
-                "%priceOne", priceFor1, 
-                "%priceStack", stackedPrice,
-                "%stackSize", stackSize,
-                "%currencySingular", EconomySim.economy.currencyNameSingular(), 
-                "%currencyPlural", EconomySim.economy.currencyNamePlural())));
-        }
-        else
-        {
-            meta.setLore(Arrays.asList(Utils.prepareDescription("buttonDescriptions.buyOne", 
-                "%priceOne", priceFor1, 
-                "%currencySingular", EconomySim.economy.currencyNameSingular(), 
-                "%currencyPlural", EconomySim.economy.currencyNamePlural())));
-        }
-
-
-        this.item.setItemMeta(meta);
     }
 
     /*
@@ -95,7 +58,17 @@ public class MenuBuyItemButton extends MenuButton implements MenuButtonListener
         ItemStack buy = new ItemStack(this.representedItem);
         buy.setAmount(buyAmount);
 
-        double price = PluginState.getSimulator().getTotalPrice(worldGroup, new ItemStack[]{buy}, Simulator.TransactionType.BUY);
+        // Charge the shown price if it still holds, otherwise quote once more
+        double price;
+        Quote quote = catalogue.getQuote(slot, buyStack);
+        if(quote != null && quote.getWorldGroup().equals(worldGroup) && PluginState.getSimulator().isCurrent(quote))
+        {
+            price = quote.getPrice();
+        }
+        else
+        {
+            price = PluginState.getSimulator().getTotalPrice(worldGroup, new ItemStack[]{buy}, Simulator.TransactionType.BUY);
+        }
 
         if(EconomySim.economy.getBalance(player) >= price)
         {
@@ -107,8 +80,8 @@ public class MenuBuyItemButton extends MenuButton implements MenuButtonListener
             {
                 Utils.giveItems(player, new ItemStack[]{buy});
 
-                PluginState.getSimulator().addBuyMovement(worldGroup, new ItemStack[]{buy});
-                PluginState.getPlugin().updateAllMenus();
+                PluginState.getSimulator().bufferBuyMovement(worldGroup, new ItemStack[]{buy});
+                PluginState.getPlugin().scheduleMovementFlush();
 
                 player.sendMessage(Utils.prepareMessage("transactions.boughtItem", 
                     "%amount", buyAmount, 
@@ -121,8 +94,8 @@ public class MenuBuyItemButton extends MenuButton implements MenuButtonListener
             {
                 player.sendMessage(Utils.prepareMessage("transactions.failed", 
                     "%error", r.errorMessage));
+                menu.updateButtons();
             }
-            menu.updateButtons();
         }
         else
         {
@@ -141,6 +114,6 @@ public class MenuBuyItemButton extends MenuButton implements MenuButtonListener
      */
     public void onMenuUpdate(Menu menu, MenuButton sender) 
     {
-        this.update(menu);
+        catalogue.update(slot);
     }
 }
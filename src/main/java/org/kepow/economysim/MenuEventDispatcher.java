@@ -0,0 +1,99 @@
+package org.kepow.economysim;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.inventory.InventoryOpenEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+
+/**
+ * Class that routes inventory events to the menu owning the inventory.
+ * A single dispatcher is registered for the plugin, so opening and 
+ * closing menus does not register or unregister any event handlers.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class MenuEventDispatcher implements Listener
+{
+    /**
+     * Get the menu an inventory belongs to.
+     * @param inventory The inventory.
+     * @return The menu, or null if the inventory does not belong to a menu.
+     */
+    private Menu getMenu(Inventory inventory)
+    {
+        if(inventory == null)
+        {
+            return null;
+        }
+
+        InventoryHolder holder = inventory.getHolder();
+        if(holder instanceof Menu)
+        {
+            return (Menu) holder;
+        }
+
+        return null;
+    }
+
+    /**
+     * Handle inventory close event.
+     * @param event The inventory close event.
+     */
+    @EventHandler
+    public void onInventoryClose(InventoryCloseEvent event) 
+    {
+        Menu menu = getMenu(event.getInventory());
+        if(menu != null)
+        {
+            menu.onInventoryClose(event);
+        }
+    }
+
+    /**
+     * Handle inventory open event.
+     * @param event The inventory open event.
+     */
+    @EventHandler
+    public void onInventoryOpen(InventoryOpenEvent event) 
+    {
+        Menu menu = getMenu(event.getInventory());
+        if(menu != null)
+        {
+            menu.onInventoryOpen(event);
+        }
+    }
+
+    /**
+     * Handle inventory drag event.
+     * @param event The inventory drag event.
+     */
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void onInventoryDrag(InventoryDragEvent event)
+    {
+        Menu menu = getMenu(event.getInventory());
+        if(menu != null)
+        {
+            menu.onInventoryDrag(event);
+        }
+    }
+
+    /**
+     * Handle inventory click event.
+     * @param event The inventory click event.
+     */
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void onInventoryClick(InventoryClickEvent event) 
+    {
+        Menu menu = getMenu(event.getInventory());
+        if(menu != null)
+        {
+            menu.onInventoryClick(event);
+        }
+    }
+}
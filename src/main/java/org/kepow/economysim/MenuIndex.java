@@ -0,0 +1,224 @@
+package org.kepow.economysim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class representing an index from the items in each world group to the
+ * demand listeners of the open menus showing their prices, so that only the
+ * affected menus are notified after a transaction. Only used on the main thread.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class MenuIndex
+{
+    /**
+     * Class representing a demand listener registered in the index.
+     *
+     * @author Thomas Churchman
+     *
+     */
+    private class Registration
+    {
+        private Menu menu;
+        private DemandListener listener;
+        private String worldGroup;
+        private Set<Integer> keys;
+
+        /**
+         * Constructor.
+         * @param menu The menu the listener is for.
+         * @param listener The demand listener.
+         * @param worldGroup The world group the listener listens to.
+         */
+        public Registration(Menu menu, DemandListener listener, String worldGroup)
+        {
+            this.menu = menu;
+            this.listener = listener;
+            this.worldGroup = worldGroup;
+            this.keys = new HashSet<Integer>();
+        }
+    }
+
+    private Map<String, ItemKeyMap<List<Registration>>> keyListeners;
+    private Map<Menu, List<Registration>> menuListeners;
+
+    /**
+     * Constructor.
+     */
+    public MenuIndex()
+    {
+        keyListeners = new HashMap<String, ItemKeyMap<List<Registration>>>();
+        menuListeners = new HashMap<Menu, List<Registration>>();
+    }
+
+    /**
+     * Register a listener to the demand of items of a world group, such
+     * as a listener showing the price of the items placed in a menu. The 
+     * listener listens to no items until its item keys are set.
+     * @param menu The menu the listener is for.
+     * @param listener The demand listener.
+     * @param worldGroup The world group the listener listens to.
+     */
+    public void register(Menu menu, DemandListener listener, String worldGroup)
+    {
+        List<Registration> menuRegistrations = menuListeners.get(menu);
+        if(menuRegistrations == null)
+        {
+            menuRegistrations = new ArrayList<Registration>();
+            menuListeners.put(menu, menuRegistrations);
+        }
+        menuRegistrations.add(new Registration(menu, listener, worldGroup));
+    }
+
+    /**
+     * Set the item keys a registered listener listens to, such as the item 
+     * keys of the items placed in its menu.
+     * @param menu The menu the listener is for.
+     * @param listener The demand listener.
+     * @param keys The item keys.
+     */
+    public void setKeys(Menu menu, DemandListener listener, List<Integer> keys)
+    {
+        Registration registration = getRegistration(menu, listener);
+        if(registration == null)
+        {
+            return;
+        }
+
+        ItemKeyMap<List<Registration>> index = keyListeners.get(registration.worldGroup);
+        if(index == null)
+        {
+            index = new ItemKeyMap<List<Registration>>();
+            keyListeners.put(registration.worldGroup, index);
+        }
+
+        Set<Integer> newKeys = new HashSet<Integer>(keys);
+        for(int key : registration.keys)
+        {
+            if(!newKeys.contains(key))
+            {
+                index.get(key).remove(registration);
+            }
+        }
+
+        for(int key : newKeys)
+        {
+            if(!registration.keys.contains(key))
+            {
+                List<Registration> registrations = index.get(key);
+                if(registrations == null)
+                {
+                    registrations = new ArrayList<Registration>();
+                    index.put(key, registrations);
+                }
+                registrations.add(registration);
+            }
+        }
+
+        registration.keys = newKeys;
+    }
+
+    /**
+     * Remove all listeners of a menu from the index.
+     * @param menu The menu.
+     */
+    public void deregister(Menu menu)
+    {
+        List<Registration> registrations = menuListeners.remove(menu);
+        if(registrations == null)
+        {
+            return;
+        }
+
+        for(Registration registration : registrations)
+        {
+            ItemKeyMap<List<Registration>> index = keyListeners.get(registration.worldGroup);
+            for(int key : registration.keys)
+            {
+                index.get(key).remove(registration);
+            }
+        }
+    }
+
+    /**
+     * Notify the demand listeners listening to items with changed demand,
+     * once per listener, of the changed items they listen to.
+     * @param changed For each world group with changed demand, the item keys
+     * of the changed items.
+     */
+    public void update(Map<String, ItemKeyIndex> changed)
+    {
+        // Collect first, as a listener may set its keys or close its menu
+        Map<Registration, ItemKeyIndex> notify = new LinkedHashMap<Registration, ItemKeyIndex>();
+        for(String worldGroup : changed.keySet())
+        {
+            ItemKeyMap<List<Registration>> index = keyListeners.get(worldGroup);
+            if(index == null)
+            {
+                continue;
+            }
+
+            ItemKeyIndex changedKeys = changed.get(worldGroup);
+            for(int i = 0; i < changedKeys.size(); ++i)
+            {
+                List<Registration> registrations = index.get(changedKeys.getKey(i));
+                if(registrations == null)
+                {
+                    continue;
+                }
+
+                for(Registration registration : registrations)
+                {
+                    ItemKeyIndex keys = notify.get(registration);
+                    if(keys == null)
+                    {
+                        keys = new ItemKeyIndex();
+                        notify.put(registration, keys);
+                    }
+                    keys.getOrAddSlot(changedKeys.getKey(i));
+                }
+            }
+        }
+
+        for(Map.Entry<Registration, ItemKeyIndex> entry : notify.entrySet())
+        {
+            Registration registration = entry.getKey();
+            if(menuListeners.containsKey(registration.menu))
+            {   // Skip menus closed by an earlier listener
+                registration.listener.onDemandChange(registration.menu, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Find the registration of a listener.
+     * @param menu The menu the listener is for.
+     * @param listener The demand listener.
+     * @return The registration, or null if the listener is not registered.
+     */
+    private Registration getRegistration(Menu menu, DemandListener listener)
+    {
+        List<Registration> registrations = menuListeners.get(menu);
+        if(registrations == null)
+        {
+            return null;
+        }
+
+        for(Registration registration : registrations)
+        {
+            if(registration.listener == listener)
+            {
+                return registration;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,329 @@
+package org.kepow.economysim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Class representing a compiled message. The message is split into
+ * literal text (with its colour codes already translated), placeholders
+ * (e.g., "%value") and words depending on a placeholder (e.g.,
+ * "&currency|value%"), so that it can be rendered in a single pass.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class MessageTemplate
+{
+    /**
+     * Class representing a part of a compiled message.
+     *
+     * @author Thomas Churchman
+     *
+     */
+    private class Token
+    {
+        private int type;
+        private String text;
+        private String dependent;
+
+        /**
+         * Constructor.
+         * @param type The token type.
+         * @param text The literal text, the placeholder name (without "%") or the word.
+         * @param dependent The name of the placeholder (without "%") the word depends on,
+         * or null.
+         */
+        public Token(int type, String text, String dependent)
+        {
+            this.type = type;
+            this.text = text;
+            this.dependent = dependent;
+        }
+    }
+
+    private static final int LITERAL = 0;
+    private static final int PLACEHOLDER = 1;
+    private static final int WORD = 2;
+
+    private static final String COLOUR_CODES = "0123456789abcdefklmnor";
+    private static final ChatColor[] COLOURS = {
+        ChatColor.BLACK, ChatColor.DARK_BLUE, ChatColor.DARK_GREEN, ChatColor.DARK_AQUA,
+        ChatColor.DARK_RED, ChatColor.DARK_PURPLE, ChatColor.GOLD, ChatColor.GRAY,
+        ChatColor.DARK_GRAY, ChatColor.BLUE, ChatColor.GREEN, ChatColor.AQUA,
+        ChatColor.RED, ChatColor.LIGHT_PURPLE, ChatColor.YELLOW, ChatColor.WHITE,
+        ChatColor.MAGIC, ChatColor.BOLD, ChatColor.STRIKETHROUGH, ChatColor.UNDERLINE,
+        ChatColor.ITALIC, ChatColor.RESET
+    };
+
+    private Messages messages;
+    private Token[] tokens;
+
+    /**
+     * Constructor. Compiles the message. Words that are not defined in the 
+     * messages config are literal text; the "%" ending them may start a 
+     * placeholder (e.g., "&a%value" is a colour code followed by a placeholder).
+     * @param messages The messages the words of this message are looked up in.
+     * @param message The message text.
+     * @param allowWords Whether the message may contain words (e.g., "&shop%").
+     */
+    public MessageTemplate(Messages messages, String message, boolean allowWords)
+    {
+        this.messages = messages;
+
+        List<Token> tokens = new ArrayList<Token>();
+        StringBuilder literal = new StringBuilder();
+
+        int i = 0;
+        while(i < message.length())
+        {
+            char c = message.charAt(i);
+
+            if(c == '&' && allowWords)
+            {   // Possibly a word, &word% or &word|dependent%
+                int wordEnd = skipLetters(message, i + 1, false);
+                if(wordEnd > i + 1 && wordEnd < message.length() && messages.hasWord(message.substring(i + 1, wordEnd)))
+                {
+                    if(message.charAt(wordEnd) == '%')
+                    {
+                        addLiteral(tokens, literal);
+                        tokens.add(new Token(WORD, message.substring(i + 1, wordEnd), null));
+                        i = wordEnd + 1;
+                        continue;
+                    }
+
+                    if(message.charAt(wordEnd) == '|')
+                    {
+                        int dependentEnd = skipLetters(message, wordEnd + 1, false);
+                        if(dependentEnd > wordEnd + 1 && dependentEnd < message.length() && message.charAt(dependentEnd) == '%')
+                        {
+                            addLiteral(tokens, literal);
+                            tokens.add(new Token(WORD, message.substring(i + 1, wordEnd), message.substring(wordEnd + 1, dependentEnd)));
+                            i = dependentEnd + 1;
+                            continue;
+                        }
+                    }
+                }
+            }
+            else if(c == '%')
+            {   // Possibly a placeholder
+                int nameEnd = skipLetters(message, i + 1, true);
+                if(nameEnd > i + 1)
+                {
+                    addLiteral(tokens, literal);
+                    tokens.add(new Token(PLACEHOLDER, message.substring(i + 1, nameEnd), null));
+                    i = nameEnd;
+                    continue;
+                }
+            }
+
+            literal.append(c);
+            ++i;
+        }
+        addLiteral(tokens, literal);
+
+        this.tokens = tokens.toArray(new Token[tokens.size()]);
+    }
+
+    /**
+     * Find the end of a run of letters.
+     * @param message The message.
+     * @param start The position to start at.
+     * @param allowDigits Whether digits are part of the run as well.
+     * @return The position of the first character after the run.
+     */
+    private static int skipLetters(String message, int start, boolean allowDigits)
+    {
+        int i = start;
+        while(i < message.length())
+        {
+            char c = message.charAt(i);
+            if(!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (allowDigits && c >= '0' && c <= '9')))
+            {
+                break;
+            }
+            ++i;
+        }
+
+        return i;
+    }
+
+    /**
+     * Add the pending literal text as a token, if there is any.
+     * @param tokens The tokens to add to.
+     * @param literal The pending literal text, which is cleared.
+     */
+    private void addLiteral(List<Token> tokens, StringBuilder literal)
+    {
+        if(literal.length() > 0)
+        {
+            tokens.add(new Token(LITERAL, translateColours(literal.toString()), null));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * Translate the colour and formatting codes (e.g., "&6") in a string.
+     * @param text The string.
+     * @return The string with the codes translated.
+     */
+    public static String translateColours(String text)
+    {
+        if(text.indexOf('&') < 0)
+        {
+            return text;
+        }
+
+        StringBuilder builder = new StringBuilder(text.length());
+        for(int i = 0; i < text.length(); ++i)
+        {
+            char c = text.charAt(i);
+            if(c == '&' && i + 1 < text.length())
+            {
+                int code = COLOUR_CODES.indexOf(text.charAt(i + 1));
+                if(code >= 0)
+                {
+                    builder.append(COLOURS[code].toString());
+                    ++i;
+                    continue;
+                }
+            }
+            builder.append(c);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Render the message.
+     * @param replacements An array of consecutive {String, Object} pairs, e.g. {"%value", 2.06}.
+     * @return The rendered message.
+     */
+    public String render(Object... replacements)
+    {
+        StringBuilder builder = new StringBuilder();
+        append(builder, replacements.length % 2 == 0 ? replacements : new Object[0]);
+        return builder.toString();
+    }
+
+    /**
+     * Render the message onto a string builder.
+     * @param builder The string builder.
+     * @param replacements An array of consecutive {String, Object} pairs.
+     */
+    private void append(StringBuilder builder, Object[] replacements)
+    {
+        for(Token token : tokens)
+        {
+            switch(token.type)
+            {
+            case LITERAL:
+                builder.append(token.text);
+                break;
+            case PLACEHOLDER:
+                appendPlaceholder(builder, token.text, replacements);
+                break;
+            case WORD:
+                appendWord(builder, token, replacements);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Render a placeholder. If no replacement matches the full placeholder name,
+     * the longest replacement matching the start of the name is used.
+     * @param builder The string builder.
+     * @param name The placeholder name (without "%").
+     * @param replacements An array of consecutive {String, Object} pairs.
+     */
+    private void appendPlaceholder(StringBuilder builder, String name, Object[] replacements)
+    {
+        int match = -1;
+        int matchLength = 0;
+        for(int i = 0; i < replacements.length; i += 2)
+        {
+            String replace = (String) replacements[i];
+            int length = replace.length() - 1;
+            if(length > matchLength && length <= name.length()
+                && replace.charAt(0) == '%' && name.regionMatches(0, replace, 1, length))
+            {
+                match = i;
+                matchLength = length;
+            }
+        }
+
+        if(match < 0)
+        {
+            builder.append('%').append(name);
+            return;
+        }
+
+        builder.append(translateColours(formatValue(replacements[match + 1])));
+        builder.append(name, matchLength, name.length());
+    }
+
+    /**
+     * Render a word, choosing the case of the word from the value of the placeholder
+     * it depends on.
+     * @param builder The string builder.
+     * @param token The word token.
+     * @param replacements An array of consecutive {String, Object} pairs.
+     */
+    private void appendWord(StringBuilder builder, Token token, Object[] replacements)
+    {
+        MessageTemplate word = null;
+
+        if(token.dependent != null)
+        {
+            for(int i = 0; i < replacements.length; i += 2)
+            {
+                String replace = (String) replacements[i];
+                if(replace.length() == token.dependent.length() + 1 && replace.charAt(0) == '%'
+                    && replace.regionMatches(1, token.dependent, 0, token.dependent.length()))
+                {
+                    String wordCase = messages.getWordCase(replacements[i + 1]);
+                    if(wordCase != null)
+                    {
+                        word = messages.getWord(token.text, wordCase);
+                    }
+                    break;
+                }
+            }
+        }
+
+        if(word == null)
+        {   // No (existing) case found, default to case "other"
+            word = messages.getWord(token.text, "other");
+        }
+
+        if(word == null)
+        {
+            builder.append('&').append(token.text);
+            if(token.dependent != null)
+            {
+                builder.append('|').append(token.dependent);
+            }
+            builder.append('%');
+            return;
+        }
+
+        word.append(builder, replacements);
+    }
+
+    /**
+     * Get the string value of a replacement.
+     * @param value The replacement.
+     * @return The string value.
+     */
+    private String formatValue(Object value)
+    {
+        if(value instanceof Double)
+        {
+            return String.format(messages.getValueFormat(), (Double) value);
+        }
+
+        return value.toString();
+    }
+}
@@ -0,0 +1,140 @@
+package org.kepow.economysim;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * Class representing the compiled messages and words of the messages config.
+ * The messages are compiled when loaded; messages and words that are first
+ * used later (e.g., those only present in the default config) are compiled
+ * on first use.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class Messages
+{
+    private ConfigurationSection config;
+    private int caseDecimals;
+    private String valueFormat;
+
+    private ConcurrentHashMap<String, MessageTemplate> templates;
+    private MessageTemplate missing;
+
+    /**
+     * Constructor.
+     * @param config The messages config.
+     * @param caseDecimals The number of decimals a number is rounded to when choosing the case of a word.
+     * @param valueDecimals The number of decimals a number is shown with.
+     */
+    public Messages(ConfigurationSection config, int caseDecimals, int valueDecimals)
+    {
+        this.config = config;
+        this.caseDecimals = caseDecimals;
+        this.valueFormat = "%." + valueDecimals + "f";
+
+        this.templates = new ConcurrentHashMap<String, MessageTemplate>();
+        this.missing = new MessageTemplate(this, "", false);
+
+        ConfigurationSection messages = config.getConfigurationSection("messages");
+        if(messages != null)
+        {
+            for(String key : messages.getKeys(true))
+            {
+                if(!messages.isConfigurationSection(key))
+                {
+                    getTemplate("messages." + key, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a compiled message.
+     * @param key The message key (without the "messages." prefix).
+     * @return The compiled message.
+     */
+    public MessageTemplate getMessage(String key)
+    {
+        MessageTemplate template = getTemplate("messages." + key, true);
+        if(template == null)
+        {
+            template = new MessageTemplate(this, "String not found: " + key, true);
+            templates.put("messages." + key, template);
+        }
+
+        return template;
+    }
+
+    /**
+     * Get a compiled case of a word.
+     * @param word The word.
+     * @param wordCase The case of the word (e.g., "1" or "other").
+     * @return The compiled case of the word, or null if the word does not have the case.
+     */
+    public MessageTemplate getWord(String word, String wordCase)
+    {
+        return getTemplate("words." + word + "." + wordCase, false);
+    }
+
+    /**
+     * Test whether a word is defined.
+     * @param word The word.
+     * @return True if the word has cases, false otherwise.
+     */
+    public boolean hasWord(String word)
+    {
+        return config.isConfigurationSection("words." + word);
+    }
+
+    /**
+     * Get the case of a word depending on a value.
+     * @param value The value.
+     * @return The case, or null if the value does not select a specific case.
+     */
+    public String getWordCase(Object value)
+    {
+        if(value instanceof Double)
+        {
+            double val = Utils.round((Double) value, caseDecimals);
+
+            if((val == Math.floor(val)) && !Double.isInfinite(val))
+            {
+                return "" + (int) Math.floor(val);
+            }
+
+            return null;
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * Get the format numbers are shown with.
+     * @return The format string.
+     */
+    public String getValueFormat()
+    {
+        return valueFormat;
+    }
+
+    /**
+     * Get a compiled template, compiling it if it was not compiled yet.
+     * @param path The path of the template in the messages config.
+     * @param allowWords Whether the template may contain words.
+     * @return The compiled template, or null if the path does not exist.
+     */
+    private MessageTemplate getTemplate(String path, boolean allowWords)
+    {
+        MessageTemplate template = templates.get(path);
+        if(template == null)
+        {
+            String text = config.getString(path);
+            template = text == null ? missing : new MessageTemplate(this, text, allowWords);
+            templates.put(path, template);
+        }
+
+        return template == missing ? null : template;
+    }
+}
@@ -0,0 +1,169 @@
+package org.kepow.economysim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Class representing the items placed in a menu, grouped by the item
+ * key of the item they map to. The items are updated slot by slot, and the
+ * item keys whose items changed are remembered until they are taken.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class PlacedItems
+{
+    private HashMap<Integer, ItemStack> slotItems;
+    private HashMap<Integer, Integer> slotKeys;
+    private ItemKeyMap<Map<Integer, ItemStack>> keyItems;
+    private ItemKeyIndex changedKeys;
+
+    /**
+     * Constructor.
+     */
+    public PlacedItems()
+    {
+        slotItems = new HashMap<Integer, ItemStack>();
+        slotKeys = new HashMap<Integer, Integer>();
+        keyItems = new ItemKeyMap<Map<Integer, ItemStack>>();
+        changedKeys = new ItemKeyIndex();
+    }
+
+    /**
+     * Set the item placed at a slot.
+     * @param slot The slot.
+     * @param item The item placed at the slot, or null if the slot is empty.
+     */
+    public void set(int slot, ItemStack item)
+    {
+        ItemStack previous = slotItems.get(slot);
+        if(previous == null ? item == null : previous.equals(item))
+        {
+            return;
+        }
+
+        if(previous != null)
+        {
+            int key = slotKeys.remove(slot);
+            slotItems.remove(slot);
+            keyItems.get(key).remove(slot);
+            changedKeys.getOrAddSlot(key);
+        }
+
+        if(item != null)
+        {   // Keep a copy, as the inventory's item may change
+            ItemStack placed = item.clone();
+            int key = PluginState.getItemConfig().getMapping(placed).getKey();
+
+            Map<Integer, ItemStack> items = keyItems.get(key);
+            if(items == null)
+            {
+                items = new LinkedHashMap<Integer, ItemStack>();
+                keyItems.put(key, items);
+            }
+
+            items.put(slot, placed);
+            slotItems.put(slot, placed);
+            slotKeys.put(slot, key);
+            changedKeys.getOrAddSlot(key);
+        }
+    }
+
+    /**
+     * Get the number of placed item stacks.
+     * @return The number of item stacks.
+     */
+    public int size()
+    {
+        return slotItems.size();
+    }
+
+    /**
+     * Get the placed items.
+     * @return An array of the placed item stacks.
+     */
+    public ItemStack[] getItems()
+    {
+        return slotItems.values().toArray(new ItemStack[0]);
+    }
+
+    /**
+     * Get the placed items mapping to an item key.
+     * @param key The item key.
+     * @return An array of the placed item stacks mapping to the key.
+     */
+    public ItemStack[] getItems(int key)
+    {
+        Map<Integer, ItemStack> items = keyItems.get(key);
+        if(items == null)
+        {
+            return new ItemStack[0];
+        }
+
+        return items.values().toArray(new ItemStack[0]);
+    }
+
+    /**
+     * Get the placed items and the slots they are placed at.
+     * @return A HashMap of slot indices mapping to placed items.
+     */
+    public HashMap<Integer, ItemStack> getItemsAndSlots()
+    {
+        return new HashMap<Integer, ItemStack>(slotItems);
+    }
+
+    /**
+     * Get the item keys that items are placed of.
+     * @return The item keys.
+     */
+    public List<Integer> getKeys()
+    {
+        List<Integer> keys = new ArrayList<Integer>();
+        for(int i = 0; i < keyItems.size(); ++i)
+        {
+            if(!keyItems.getValue(i).isEmpty())
+            {
+                keys.add(keyItems.getKey(i));
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * Test whether items are placed of an item key.
+     * @param key The item key.
+     * @return True if items are placed of the key, false otherwise.
+     */
+    public boolean containsKey(int key)
+    {
+        Map<Integer, ItemStack> items = keyItems.get(key);
+        return items != null && !items.isEmpty();
+    }
+
+    /**
+     * Test whether placed items changed since the changed item keys were last taken.
+     * @return True if placed items changed, false otherwise.
+     */
+    public boolean hasChangedKeys()
+    {
+        return changedKeys.size() > 0;
+    }
+
+    /**
+     * Get the item keys whose placed items changed since they were last taken,
+     * and start remembering anew.
+     * @return The changed item keys.
+     */
+    public ItemKeyIndex takeChangedKeys()
+    {
+        ItemKeyIndex changed = changedKeys;
+        changedKeys = new ItemKeyIndex();
+        return changed;
+    }
+}
@@ -0,0 +1,25 @@
+package org.kepow.economysim;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+/**
+ * Class that keeps the index of player names up-to-date.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class PlayerListener implements Listener
+{
+    /**
+     * Handle player join event. The player may have joined under a new name.
+     * @param event The player join event.
+     */
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event)
+    {
+        PluginState.getPlugin().getPlayerNameIndex().add(event.getPlayer());
+    }
+}
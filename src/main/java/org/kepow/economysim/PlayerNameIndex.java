@@ -0,0 +1,88 @@
+package org.kepow.economysim;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.OfflinePlayer;
+
+/**
+ * Class representing a case-insensitive index from the (last used) names of
+ * the players that have been seen by the server to their UUIDs. The index
+ * can be built from any thread and read from any thread.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class PlayerNameIndex
+{
+    private Map<String, UUID> uuids;
+    private Map<UUID, String> names;
+
+    /**
+     * Constructor.
+     */
+    public PlayerNameIndex()
+    {
+        uuids = new ConcurrentHashMap<String, UUID>();
+        names = new ConcurrentHashMap<UUID, String>();
+    }
+
+    /**
+     * Add the players the server has seen. Players that were added before
+     * keep their current name, as that name is at least as recent.
+     * @param players The players.
+     */
+    public void addAll(OfflinePlayer[] players)
+    {
+        for(OfflinePlayer player : players)
+        {
+            String name = player.getName();
+            if(name == null)
+            {
+                continue;
+            }
+
+            synchronized(this)
+            {
+                if(!names.containsKey(player.getUniqueId()) && !uuids.containsKey(name.toLowerCase()))
+                {
+                    names.put(player.getUniqueId(), name.toLowerCase());
+                    uuids.put(name.toLowerCase(), player.getUniqueId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a player under their current name, replacing the name they were
+     * known by before.
+     * @param player The player.
+     */
+    public synchronized void add(OfflinePlayer player)
+    {
+        String name = player.getName().toLowerCase();
+
+        String oldName = names.put(player.getUniqueId(), name);
+        if(oldName != null && !oldName.equals(name) && player.getUniqueId().equals(uuids.get(oldName)))
+        {
+            uuids.remove(oldName);
+        }
+
+        UUID oldUuid = uuids.put(name, player.getUniqueId());
+        if(oldUuid != null && !oldUuid.equals(player.getUniqueId()))
+        {   // The name was taken over from another player
+            names.remove(oldUuid);
+        }
+    }
+
+    /**
+     * Get the UUID of a player by their (last used) name.
+     * @param name The name of the player, in any case.
+     * @return The UUID of the player, or null if no player with that name was seen.
+     */
+    public UUID getUniqueId(String name)
+    {
+        return uuids.get(name.toLowerCase());
+    }
+}
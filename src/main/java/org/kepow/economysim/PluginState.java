@@ -9,15 +9,17 @@ package org.kepow.economysim;
 public final class PluginState 
 {
     private static EconomySim plugin = null;
-    private static WorldConfig worldConfig = null;
-    private static Simulator simulator = null;
+    private static volatile WorldConfig worldConfig = null;
+    private static volatile Simulator simulator = null;
     private static ShopList shopList = null;
-    private static ItemConfig itemConfig = null;
+    private static volatile ItemConfig itemConfig = null;
+    private static QuoteService quoteService = null;
 
     private static CustomConfig shopsCustomConfig;
     private static CustomConfig simulatorCustomConfig;
     private static CustomConfig itemsCustomConfig;
     private static CustomConfig messagesCustomConfig;
+    private static volatile Messages messages;
 
     /**
      * Prepare the custom config objects.
@@ -33,6 +35,10 @@ public final class PluginState
         simulatorCustomConfig.saveDefaultConfig();
         itemsCustomConfig.saveDefaultConfig();
         messagesCustomConfig.saveDefaultConfig();
+
+        PluginState.messages = new Messages(messagesCustomConfig.getCustomConfig(),
+            plugin.getConfig().getInt("display.numberOfDecimals"),
+            plugin.getConfig().getInt("display.numDecimals"));
     }
 
     public static CustomConfig getShopsCustomConfig()
@@ -55,6 +61,11 @@ public final class PluginState
         return PluginState.messagesCustomConfig;
     }
 
+    public static Messages getMessages()
+    {
+        return PluginState.messages;
+    }
+
     public static void setPlugin(EconomySim plugin)
     {
         PluginState.plugin = plugin;
@@ -68,6 +79,11 @@ public final class PluginState
     public static void setSimulator(Simulator simulator)
     {
         PluginState.simulator = simulator;
+
+        if(simulator != null && PluginState.worldConfig != null)
+        {
+            simulator.setWorldConfig(PluginState.worldConfig);
+        }
     }
 
     public static Simulator getSimulator()
@@ -85,9 +101,30 @@ public final class PluginState
         return PluginState.shopList;
     }
 
+    public static void setQuoteService(QuoteService quoteService)
+    {
+        PluginState.quoteService = quoteService;
+    }
+
+    public static QuoteService getQuoteService()
+    {
+        return PluginState.quoteService;
+    }
+
     public static void setWorldConfig(WorldConfig worldConfig)
     {
         PluginState.worldConfig = worldConfig; 
+
+        if(PluginState.simulator != null)
+        {
+            // Swap in the newly compiled pricing parameters
+            PluginState.simulator.setWorldConfig(worldConfig);
+        }
+
+        if(PluginState.plugin != null)
+        {   // The catalogues show prices of the previous parameters
+            PluginState.plugin.getBuyCatalogues().invalidate();
+        }
     }
 
     public static WorldConfig getWorldConfig()
@@ -0,0 +1,224 @@
+package org.kepow.economysim;
+
+import org.kepow.economysim.Simulator.TransactionType;
+
+/**
+ * Class representing a precomputed price curve for a world group.
+ *
+ * The cumulative price integral of both the "sell" part (demand at
+ * or below 0) and the "buy" part (demand above 0) of the price equation
+ * is tabulated ahead of time, so that a transaction price can be found
+ * by interpolating in the tables instead of evaluating the exact equation.
+ * Transactions reaching outside of the tabulated demand range fall back
+ * to the exact equation in {@link Simulator#getTransactionPrice}.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class PriceCurve
+{
+    private final double basePrice;
+    private final double minPricePerStack;
+    private final double sellPriceSteepness;
+    private final double buyPriceSteepness;
+    private final double buyPriceAsymptote;
+    private final double sellPriceFactor;
+    private final double buyPriceFactor;
+
+    private final double sellStep;
+    private final double buyStep;
+    private final double sellRange;
+    private final double buyRange;
+
+    // sellIntegral[i] holds the integral at demand -i*sellStep,
+    // buyIntegral[i] holds the integral at demand i*buyStep.
+    private final double[] sellIntegral;
+    private final double[] buyIntegral;
+
+    /**
+     * Constructor. Builds the price integral tables.
+     * @param basePrice The base price (i.e., price at 0 demand)
+     * @param minPricePerStack The minimum price per stack.
+     * @param sellPriceSteepness The logistic function steepness below 0.
+     * @param buyPriceSteepness The logistic function steepness above 0.
+     * @param buyPriceAsymptote The extra slope's steepness ("asymptote slope")
+     * above 0.
+     * @param sellPriceFactor Factor with which sale prices are multiplied.
+     * @param buyPriceFactor Factor with which buy prices are multiplied.
+     * @param maxError The maximum absolute error of the price of a single
+     * transaction (before the minimum price per stack is applied).
+     * @param maxDemand The absolute demand up to which the tables should reach.
+     * @param maxEntries The maximum number of entries per table. If the error bound
+     * cannot be met for the full demand range with this many entries, the tabulated
+     * demand range is reduced instead.
+     */
+    public PriceCurve(double basePrice, double minPricePerStack,
+        double sellPriceSteepness, double buyPriceSteepness,
+        double buyPriceAsymptote, double sellPriceFactor, double buyPriceFactor,
+        double maxError, double maxDemand, int maxEntries)
+    {
+        this.basePrice = basePrice;
+        this.minPricePerStack = minPricePerStack;
+        this.sellPriceSteepness = sellPriceSteepness;
+        this.buyPriceSteepness = buyPriceSteepness;
+        this.buyPriceAsymptote = buyPriceAsymptote;
+        this.sellPriceFactor = sellPriceFactor;
+        this.buyPriceFactor = buyPriceFactor;
+
+        // The error of linearly interpolating the integral is at most step^2/8
+        // times the maximum absolute slope of the price (the second derivative
+        // of the integral). A transaction price is the difference of two
+        // interpolated values, so each value may be off by half of the error bound.
+        double factor = Math.max(Math.abs(sellPriceFactor), Math.abs(buyPriceFactor));
+        double sellSlope = Math.abs(basePrice * sellPriceSteepness / 2) * factor;
+        double buySlope = (Math.abs(basePrice * buyPriceSteepness * 32 / 27) + Math.abs(buyPriceAsymptote)) * factor;
+
+        this.sellStep = getStep(sellSlope, maxError, maxDemand);
+        this.buyStep = getStep(buySlope, maxError, maxDemand);
+
+        this.sellIntegral = new double[getNumEntries(sellStep, maxDemand, maxEntries)];
+        this.buyIntegral = new double[getNumEntries(buyStep, maxDemand, maxEntries)];
+
+        for(int i = 0; i < sellIntegral.length; ++i)
+        {
+            sellIntegral[i] = Simulator.getSellPriceIntegral(-i * sellStep, basePrice, sellPriceSteepness);
+        }
+        for(int i = 0; i < buyIntegral.length; ++i)
+        {
+            buyIntegral[i] = Simulator.getBuyPriceIntegral(i * buyStep, basePrice, buyPriceSteepness, buyPriceAsymptote);
+        }
+
+        // The last entry is only used to interpolate towards.
+        this.sellRange = (sellIntegral.length - 1) * sellStep;
+        this.buyRange = (buyIntegral.length - 1) * buyStep;
+    }
+
+    /**
+     * Get the table step size that meets the error bound.
+     * @param slope The maximum absolute slope of the price.
+     * @param maxError The maximum absolute error of a transaction price.
+     * @param maxDemand The absolute demand up to which the table should reach.
+     * @return The step size.
+     */
+    private static double getStep(double slope, double maxError, double maxDemand)
+    {
+        if(slope <= 0)
+        {   // The integral is linear, any step size is exact.
+            return Math.max(maxDemand, 1);
+        }
+
+        return Math.sqrt(4 * maxError / slope);
+    }
+
+    /**
+     * Get the number of table entries for a step size.
+     * @param step The step size.
+     * @param maxDemand The absolute demand up to which the table should reach.
+     * @param maxEntries The maximum number of entries.
+     * @return The number of table entries.
+     */
+    private static int getNumEntries(double step, double maxDemand, int maxEntries)
+    {
+        double entries = Math.ceil(maxDemand / step) + 1;
+        return (int) Math.max(2, Math.min(entries, maxEntries));
+    }
+
+    /**
+     * Interpolate a value in a table.
+     * @param table The table.
+     * @param step The step size of the table.
+     * @param x The (non-negative) table position to interpolate at.
+     * @return The interpolated value.
+     */
+    private static double interpolate(double[] table, double step, double x)
+    {
+        double pos = x / step;
+        int i = (int) pos;
+        if(i >= table.length - 1)
+        {
+            return table[table.length - 1];
+        }
+
+        double frac = pos - i;
+        return table[i] + frac * (table[i+1] - table[i]);
+    }
+
+    /**
+     * Get the price for a single transaction. Gives the same result as
+     * {@link Simulator#getTransactionPrice} up to the configured error bound.
+     *
+     * @param type The transaction type.
+     * @param amount The transaction movement (e.g., 50 bought or 20 sold)
+     * @param demand The demand at the start of the transaction.
+     * @return The price for the transaction.
+     */
+    public double getTransactionPrice(TransactionType type, double amount, double demand)
+    {
+        double startDemand = demand;
+        double endDemand;
+        if (type == TransactionType.BUY)
+        {
+            endDemand = startDemand + amount;
+        }
+        else
+        {
+            endDemand = startDemand - amount;
+        }
+
+        double lowDemand = Math.min(startDemand, endDemand);
+        double highDemand = Math.max(startDemand, endDemand);
+
+        if(lowDemand < -sellRange || highDemand > buyRange)
+        {   // Outside of the tables, use the exact equation
+            return Simulator.getTransactionPrice(type, amount, demand,
+                basePrice,
+                minPricePerStack,
+                sellPriceSteepness, buyPriceSteepness,
+                buyPriceAsymptote,
+                sellPriceFactor, buyPriceFactor);
+        }
+
+        double price;
+        if (startDemand * endDemand < 0)
+        {   // Demand crosses the vertical axis
+            price =
+                getTransactionPrice(TransactionType.BUY, -lowDemand, lowDemand)
+                +
+                getTransactionPrice(TransactionType.BUY, highDemand, 0);
+        }
+        else
+        {
+            if (highDemand <= 0)
+            {   // Use the "sell" part of the curve
+                price =
+                    interpolate(sellIntegral, sellStep, -highDemand)
+                    -
+                    interpolate(sellIntegral, sellStep, -lowDemand);
+            }
+            else
+            {   // Use the "buy" part of the curve
+                price =
+                    interpolate(buyIntegral, buyStep, highDemand)
+                    -
+                    interpolate(buyIntegral, buyStep, lowDemand);
+            }
+
+            if (type == TransactionType.BUY)
+            {
+                price *= buyPriceFactor;
+            }
+            else
+            {
+                price *= sellPriceFactor;
+            }
+        }
+
+        // Check if the minimum price is met, and if not set the price to the minimum price
+        if(price / amount * 64 < minPricePerStack)
+        {
+            price = minPricePerStack / 64 * amount;
+        }
+
+        return price;
+    }
+}
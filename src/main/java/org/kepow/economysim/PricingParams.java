@@ -0,0 +1,173 @@
+package org.kepow.economysim;
+
+/**
+ * Class representing the compiled, immutable pricing parameters
+ * of a world group.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public final class PricingParams
+{
+    private final double basePrice;
+    private final double minPricePerStack;
+    private final double sellPriceSteepness;
+    private final double buyPriceSteepness;
+    private final double buyPriceAsymptoteSlope;
+    private final double sellPriceFactor;
+    private final double buyPriceFactor;
+    private final double saleDecayPerDay;
+    private final double buyDecayPerDay;
+    private final PriceCurve priceCurve;
+
+    /**
+     * Constructor.
+     * @param basePrice The base price (i.e., price at 0 demand)
+     * @param minPricePerStack The minimum price per stack.
+     * @param sellPriceSteepness The logistic function steepness below 0.
+     * @param buyPriceSteepness The logistic function steepness above 0.
+     * @param buyPriceAsymptoteSlope The extra slope's steepness ("asymptote slope")
+     * above 0.
+     * @param sellPriceFactor Factor with which sale prices are multiplied.
+     * @param buyPriceFactor Factor with which buy prices are multiplied.
+     * @param saleDecayPerDay The sale decay per day.
+     * @param buyDecayPerDay The buy decay per day.
+     * @param priceCurve The precomputed price curve, or null if prices should
+     * be calculated with the exact equation.
+     */
+    public PricingParams(double basePrice, double minPricePerStack,
+        double sellPriceSteepness, double buyPriceSteepness,
+        double buyPriceAsymptoteSlope, double sellPriceFactor,
+        double buyPriceFactor, double saleDecayPerDay, double buyDecayPerDay,
+        PriceCurve priceCurve)
+    {
+        this.basePrice = basePrice;
+        this.minPricePerStack = minPricePerStack;
+        this.sellPriceSteepness = sellPriceSteepness;
+        this.buyPriceSteepness = buyPriceSteepness;
+        this.buyPriceAsymptoteSlope = buyPriceAsymptoteSlope;
+        this.sellPriceFactor = sellPriceFactor;
+        this.buyPriceFactor = buyPriceFactor;
+        this.saleDecayPerDay = saleDecayPerDay;
+        this.buyDecayPerDay = buyDecayPerDay;
+        this.priceCurve = priceCurve;
+    }
+
+    /**
+     * Get the price for a single transaction, using the price curve
+     * if one is present.
+     * @param type The transaction type.
+     * @param amount The transaction movement (e.g., 50 bought or 20 sold)
+     * @param demand The demand at the start of the transaction.
+     * @return The price for the transaction.
+     */
+    public double getTransactionPrice(Simulator.TransactionType type, double amount, double demand)
+    {
+        if(priceCurve != null)
+        {
+            return priceCurve.getTransactionPrice(type, amount, demand);
+        }
+        else
+        {
+            return Simulator.getTransactionPrice(type,
+                amount,
+                demand,
+                basePrice,
+                minPricePerStack,
+                sellPriceSteepness, buyPriceSteepness,
+                buyPriceAsymptoteSlope,
+                sellPriceFactor, buyPriceFactor);
+        }
+    }
+
+    /**
+     * Get the base price (i.e., price at 0 demand).
+     * @return The base price.
+     */
+    public double getBasePrice()
+    {
+        return basePrice;
+    }
+
+    /**
+     * Get the minimum price per stack.
+     * @return The minimum price per stack.
+     */
+    public double getMinPricePerStack()
+    {
+        return minPricePerStack;
+    }
+
+    /**
+     * Get the logistic function steepness below 0.
+     * @return The sell price steepness.
+     */
+    public double getSellPriceSteepness()
+    {
+        return sellPriceSteepness;
+    }
+
+    /**
+     * Get the logistic function steepness above 0.
+     * @return The buy price steepness.
+     */
+    public double getBuyPriceSteepness()
+    {
+        return buyPriceSteepness;
+    }
+
+    /**
+     * Get the extra slope's steepness ("asymptote slope") above 0.
+     * @return The buy price asymptote slope.
+     */
+    public double getBuyPriceAsymptoteSlope()
+    {
+        return buyPriceAsymptoteSlope;
+    }
+
+    /**
+     * Get the factor with which sale prices are multiplied.
+     * @return The sell price factor.
+     */
+    public double getSellPriceFactor()
+    {
+        return sellPriceFactor;
+    }
+
+    /**
+     * Get the factor with which buy prices are multiplied.
+     * @return The buy price factor.
+     */
+    public double getBuyPriceFactor()
+    {
+        return buyPriceFactor;
+    }
+
+    /**
+     * Get the sale decay per day.
+     * @return The sale decay per day.
+     */
+    public double getSaleDecayPerDay()
+    {
+        return saleDecayPerDay;
+    }
+
+    /**
+     * Get the buy decay per day.
+     * @return The buy decay per day.
+     */
+    public double getBuyDecayPerDay()
+    {
+        return buyDecayPerDay;
+    }
+
+    /**
+     * Get the precomputed price curve.
+     * @return The price curve, or null if prices are calculated
+     * with the exact equation.
+     */
+    public PriceCurve getPriceCurve()
+    {
+        return priceCurve;
+    }
+}
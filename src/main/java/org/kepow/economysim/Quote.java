@@ -0,0 +1,77 @@
+package org.kepow.economysim;
+
+/**
+ * Class representing the quoted price of an array of item stacks. The quote
+ * is stamped with the demand version of each item it touched, so that it can
+ * be told whether the price still holds.
+ *
+ * @author Thomas Churchman
+ *
+ */
+public class Quote
+{
+    private WorldSimulator simulator;
+    private double price;
+    private int[] keys;
+    private long[] versions;
+
+    /**
+     * Constructor.
+     * @param simulator The world simulator the price was quoted by.
+     * @param price The total price.
+     * @param keys The item keys of the items the price depends on.
+     * @param versions The demand version of each item key when the price was quoted.
+     */
+    public Quote(WorldSimulator simulator, double price, int[] keys, long[] versions)
+    {
+        this.simulator = simulator;
+        this.price = price;
+        this.keys = keys;
+        this.versions = versions;
+    }
+
+    /**
+     * Get the world simulator the price was quoted by.
+     * @return The world simulator.
+     */
+    public WorldSimulator getWorldSimulator()
+    {
+        return simulator;
+    }
+
+    /**
+     * Get the world group the price was quoted in.
+     * @return The world group.
+     */
+    public String getWorldGroup()
+    {
+        return simulator.getWorldGroup();
+    }
+
+    /**
+     * Get the quoted price.
+     * @return The total price.
+     */
+    public double getPrice()
+    {
+        return price;
+    }
+
+    /**
+     * Get the item keys of the items the price depends on.
+     * @return The item keys.
+     */
+    public int[] getKeys()
+    {
+        return keys;
+    }
+
+    /**
+     * Get the demand versions of the items the price depends on.
+     * @return The demand version of each item key.
+     */
+    public long[] getVersions()
+    {
+        return versions;
+    }
+}
@@ -0,0 +1,16 @@
+package org.kepow.economysim;
+
+/**
+ * Interface representing a listener receiving the prices of a quote.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public interface QuoteListener 
+{
+    /**
+     * Called on the main thread when the prices of a quote have been calculated.
+     * @param quotes The quote of each basket, in the order the baskets were quoted in.
+     */
+    public void onQuote(Quote[] quotes);
+}
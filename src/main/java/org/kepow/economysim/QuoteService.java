@@ -0,0 +1,160 @@
+package org.kepow.economysim;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+import org.kepow.economysim.Simulator.TransactionType;
+
+/**
+ * Class that calculates prices on a pool of worker threads, so that
+ * quoting does not hold up the main thread. The prices of a quote are 
+ * calculated against the same demand, and are handed to the quote's 
+ * listener on the main thread.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class QuoteService 
+{
+    /**
+     * Class representing the task calculating the prices of a quote.
+     * 
+     * @author Thomas Churchman
+     *
+     */
+    private class QuoteTask implements Runnable
+    {
+        private String worldGroup;
+        private ItemStack[][] baskets;
+        private TransactionType type;
+        private QuoteListener listener;
+
+        /**
+         * Constructor.
+         * @param worldGroup The world group to quote in.
+         * @param baskets The baskets to quote, which are not modified afterwards.
+         * @param type The transaction type.
+         * @param listener The listener to hand the prices to.
+         */
+        public QuoteTask(String worldGroup, ItemStack[][] baskets, TransactionType type, QuoteListener listener)
+        {
+            this.worldGroup = worldGroup;
+            this.baskets = baskets;
+            this.type = type;
+            this.listener = listener;
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run()
+        {
+            final Quote[] quotes;
+            try
+            {
+                quotes = PluginState.getSimulator().getQuotes(worldGroup, baskets, type);
+            }
+            catch (RuntimeException e)
+            {   // The executor would swallow the exception
+                PluginState.getPlugin().getLogger().log(Level.SEVERE, "Could not quote prices in world group " + worldGroup, e);
+                return;
+            }
+
+            if(!plugin.isEnabled())
+            {   // No tasks can be scheduled anymore
+                return;
+            }
+
+            Bukkit.getScheduler().runTask(plugin, new Runnable()
+            {
+                public void run()
+                {
+                    listener.onQuote(quotes);
+                }
+            });
+        }
+    }
+
+    /**
+     * Class creating the worker threads. The threads are named, and are
+     * daemon threads, so that they never keep the server from stopping.
+     * 
+     * @author Thomas Churchman
+     *
+     */
+    private class WorkerFactory implements ThreadFactory
+    {
+        private AtomicInteger numThreads = new AtomicInteger();
+
+        /*
+         * (non-Javadoc)
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "EconomySim quote worker " + numThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private Plugin plugin;
+    private ExecutorService executor;
+
+    /**
+     * Constructor.
+     * @param plugin The plugin to schedule the listeners with.
+     * @param numThreads The number of worker threads.
+     */
+    public QuoteService(Plugin plugin, int numThreads)
+    {
+        this.plugin = plugin;
+        executor = Executors.newFixedThreadPool(Math.max(1, numThreads), new WorkerFactory());
+    }
+
+    /**
+     * Quote the total price of each of a number of baskets in the background.
+     * Must be called from the main thread.
+     * @param worldGroup The world group to quote in.
+     * @param baskets The baskets of item stacks to quote.
+     * @param type The transaction type.
+     * @param listener The listener to hand the prices to on the main thread.
+     */
+    public void quote(String worldGroup, ItemStack[][] baskets, TransactionType type, QuoteListener listener)
+    {
+        // The item stacks may be changed on the main thread while the quote is calculated
+        ItemStack[][] copies = new ItemStack[baskets.length][];
+        for(int i = 0; i < baskets.length; ++i)
+        {
+            copies[i] = new ItemStack[baskets[i].length];
+            for(int j = 0; j < baskets[i].length; ++j)
+            {
+                copies[i][j] = baskets[i][j].clone();
+            }
+        }
+
+        try
+        {
+            executor.execute(new QuoteTask(worldGroup, copies, type, listener));
+        }
+        catch (RejectedExecutionException e)
+        {   // The service has been shut down
+        }
+    }
+
+    /**
+     * Shut down the worker threads. Quotes still in progress are discarded.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+}
@@ -21,6 +21,8 @@ public class Shop implements ConfigurationSerializable
     private String displayName;
     private List<String> owners;
     private int numBuyRows;
+    private boolean dirty = false;
+    private int goodsVersion = 0;
 
 
     HashMap<Integer, ItemStack> items;
@@ -75,6 +77,24 @@ public class Shop implements ConfigurationSerializable
         items = (HashMap<Integer, ItemStack>) map.get("items");
     }
 
+    /**
+     * Copy constructor. The shop's goods are copied as well.
+     * @param shop Shop to copy.
+     */
+    public Shop(Shop shop)
+    {
+        this.name = shop.name;
+        this.displayName = shop.displayName;
+        this.owners = new ArrayList<String>(shop.owners);
+        this.numBuyRows = shop.numBuyRows;
+
+        this.items = new HashMap<Integer, ItemStack>();
+        for(Integer slot : shop.items.keySet())
+        {
+            this.items.put(slot, shop.items.get(slot).clone());
+        }
+    }
+
     /**
      * Indicates whether the given player is allowed to manage the shop.
      * @param player The player to check manage permission for.
@@ -95,6 +115,7 @@ public class Shop implements ConfigurationSerializable
         if(!owners.contains(player.getUniqueId().toString()))
         {
             owners.add(player.getUniqueId().toString());
+            dirty = true;
             return true;
         }
         else
@@ -117,7 +138,9 @@ public class Shop implements ConfigurationSerializable
         }
         else
         {
-            return owners.remove(target.getUniqueId().toString());			
+            boolean removed = owners.remove(target.getUniqueId().toString());
+            dirty |= removed;
+            return removed;
         }
     }
 
@@ -129,6 +152,8 @@ public class Shop implements ConfigurationSerializable
     public void setGoods(HashMap<Integer, ItemStack> items)
     {
         this.items = items;
+        dirty = true;
+        ++goodsVersion;
     }
 
     /**
@@ -158,6 +183,8 @@ public class Shop implements ConfigurationSerializable
     public void addShopItem(int slot, ItemStack item)
     {
         items.put(slot, item);
+        dirty = true;
+        ++goodsVersion;
     }
 
     /**
@@ -176,6 +203,7 @@ public class Shop implements ConfigurationSerializable
     public void setNumBuyRows(int numBuyRows)
     {
         this.numBuyRows = numBuyRows;
+        dirty = true;
     }
 
     /**
@@ -194,6 +222,7 @@ public class Shop implements ConfigurationSerializable
     public void setDisplayName(String displayName)
     {
         this.displayName = displayName;
+        dirty = true;
     }
 
     /**
@@ -205,6 +234,33 @@ public class Shop implements ConfigurationSerializable
         return displayName;
     }
 
+    /**
+     * Test whether the shop was modified since it was last marked as saved.
+     * @return True if the shop was modified, false otherwise.
+     */
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+    /**
+     * Set whether the shop was modified since it was last saved.
+     * @param dirty Whether the shop was modified.
+     */
+    public void setDirty(boolean dirty)
+    {
+        this.dirty = dirty;
+    }
+
+    /**
+     * Get the version of the shop's stock, which changes whenever the stock changes.
+     * @return The version of the stock.
+     */
+    public int getGoodsVersion()
+    {
+        return goodsVersion;
+    }
+
     /*
      * (non-Javadoc)
      * @see org.bukkit.configuration.serialization.ConfigurationSerializable#serialize()
@@ -1,7 +1,9 @@
 package org.kepow.economysim;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.bukkit.configuration.serialization.ConfigurationSerializable;
 import org.bukkit.configuration.serialization.ConfigurationSerialization;
@@ -16,6 +18,9 @@ public class ShopList implements ConfigurationSerializable
 {
     HashMap<String, Shop> shops;
 
+    // Names of the shops added or removed since the changes were last collected
+    private Set<String> changedShops = new HashSet<String>();
+
     /**
      * Constructor.
      */
@@ -41,6 +46,19 @@ public class ShopList implements ConfigurationSerializable
         }
     }
 
+    /**
+     * Copy constructor. The shops are copied as well.
+     * @param shopList Shop list to copy.
+     */
+    public ShopList(ShopList shopList)
+    {
+        shops = new HashMap<String, Shop>();
+        for(String shopName : shopList.shops.keySet())
+        {
+            shops.put(shopName, new Shop(shopList.shops.get(shopName)));
+        }
+    }
+
     /**
      * Add a shop to the shop list.
      * @param shop The shop to add.
@@ -48,6 +66,7 @@ public class ShopList implements ConfigurationSerializable
      */
     public boolean add(Shop shop)
     {
+        changedShops.add(shop.getName());
         return shops.put(shop.getName(), shop) == null;
     }
 
@@ -79,6 +98,7 @@ public class ShopList implements ConfigurationSerializable
         if(contains(shop))
         {
             shops.remove(shop.getName());
+            changedShops.add(shop.getName());
             return true;
         }
         else
@@ -126,6 +146,37 @@ public class ShopList implements ConfigurationSerializable
         return new HashMap<String, Shop>(shops);
     }
 
+    /**
+     * Mark all shops in the list as changed, so that they are all 
+     * written on the next save.
+     */
+    public void markAllChanged()
+    {
+        changedShops.addAll(shops.keySet());
+    }
+
+    /**
+     * Get the names of the shops that were added, modified or removed since
+     * the changes were last collected, and mark all shops as saved.
+     * @return The names of the changed shops.
+     */
+    public Set<String> collectChanges()
+    {
+        Set<String> changes = changedShops;
+        changedShops = new HashSet<String>();
+
+        for(Shop shop : shops.values())
+        {
+            if(shop.isDirty())
+            {
+                changes.add(shop.getName());
+                shop.setDirty(false);
+            }
+        }
+
+        return changes;
+    }
+
     /*
      * (non-Javadoc)
      * @see org.bukkit.configuration.serialization.ConfigurationSerializable#serialize()
@@ -1,13 +1,19 @@
 package org.kepow.economysim;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.configuration.serialization.ConfigurationSerializable;
 import org.bukkit.inventory.ItemStack;
 
 /**
- * Class that represents the economy simulation.
+ * Class that represents the economy simulation. The simulation can be 
+ * used from any thread; each world group is locked separately.
  * 
  * @author Thomas Churchman
  * 
@@ -25,7 +31,13 @@ public class Simulator implements ConfigurationSerializable
         SELL, BUY
     }
 
-    private Map<String, WorldSimulator> simulators;
+    private ConcurrentHashMap<String, WorldSimulator> simulators;
+    private volatile WorldConfig worldConfig;
+    private volatile boolean lazyDecay = false;
+    private volatile double buyDecayPerDay = 0;
+    private volatile double saleDecayPerDay = 0;
+    private volatile long journalSegment = 0;
+    private volatile TransactionJournal journal = null;
 
     /**
      * Constructor.
@@ -34,7 +46,12 @@ public class Simulator implements ConfigurationSerializable
      */
     public Simulator(Map<String, Object> map)
     {
-        simulators = (Map<String, WorldSimulator>) map.get("simulators");
+        simulators = new ConcurrentHashMap<String, WorldSimulator>((Map<String, WorldSimulator>) map.get("simulators"));
+
+        if (map.containsKey("journalSegment"))
+        {
+            journalSegment = ((Number) map.get("journalSegment")).longValue();
+        }
 
         for (String worldGroup : simulators.keySet())
         {
@@ -47,7 +64,223 @@ public class Simulator implements ConfigurationSerializable
      */
     public Simulator()
     {
-        simulators = new HashMap<String, WorldSimulator>();
+        simulators = new ConcurrentHashMap<String, WorldSimulator>();
+    }
+
+    /**
+     * Copy constructor. The world simulators are copied as well.
+     * 
+     * @param simulator Simulator to copy.
+     */
+    public Simulator(Simulator simulator)
+    {
+        simulators = new ConcurrentHashMap<String, WorldSimulator>();
+        for (WorldSimulator worldSimulator : simulator.simulators.values())
+        {
+            simulators.put(worldSimulator.getWorldGroup(), new WorldSimulator(worldSimulator));
+        }
+
+        worldConfig = simulator.worldConfig;
+        lazyDecay = simulator.lazyDecay;
+        buyDecayPerDay = simulator.buyDecayPerDay;
+        saleDecayPerDay = simulator.saleDecayPerDay;
+        journalSegment = simulator.journalSegment;
+    }
+
+    /**
+     * Copy the simulator at a single point in time, and start a new journal 
+     * segment at that same point. No movement can be recorded and no world 
+     * group can be created while the copy is made, so all movement is either
+     * part of the copy or journaled in the segments from the copy's journal 
+     * segment on.
+     * 
+     * @return The copy.
+     */
+    public synchronized Simulator snapshot()
+    {
+        // Holding this keeps world groups from being created
+        List<WorldSimulator> blocked = new ArrayList<WorldSimulator>(simulators.values());
+        for (WorldSimulator simulator : blocked)
+        {
+            simulator.blockWrites();
+        }
+
+        try
+        {
+            Simulator copy = new Simulator(this);
+            if (journal != null)
+            {
+                copy.setJournalSegment(journal.rotate());
+            }
+
+            return copy;
+        }
+        finally
+        {
+            for (WorldSimulator simulator : blocked)
+            {
+                simulator.unblockWrites();
+            }
+        }
+    }
+
+    /**
+     * Add the simulator of a world group, replacing any existing simulator of 
+     * that group.
+     * 
+     * @param simulator The simulator to add.
+     */
+    public synchronized void addWorldSimulator(WorldSimulator simulator)
+    {
+        configure(simulator);
+        simulators.put(simulator.getWorldGroup(), simulator);
+    }
+
+    /**
+     * Pass the settings of this simulator to the simulator of a world group.
+     * 
+     * @param simulator The simulator of the world group.
+     */
+    private void configure(WorldSimulator simulator)
+    {
+        if (worldConfig != null)
+        {
+            simulator.setPricingParams(worldConfig.getPricingParams(simulator.getWorldGroup()));
+        }
+        simulator.setDecayPerDay(buyDecayPerDay, saleDecayPerDay);
+        simulator.setLazyDecay(lazyDecay);
+        simulator.setJournal(journal);
+    }
+
+    /**
+     * Get the simulators of all world groups.
+     * 
+     * @return The simulators of all world groups.
+     */
+    public Collection<WorldSimulator> getWorldSimulators()
+    {
+        return Collections.unmodifiableCollection(simulators.values());
+    }
+
+    /**
+     * Set the world configuration the simulators take their pricing
+     * parameters from. The compiled parameters of every world group
+     * are swapped in atomically.
+     * 
+     * @param worldConfig The world configuration.
+     */
+    public synchronized void setWorldConfig(WorldConfig worldConfig)
+    {
+        this.worldConfig = worldConfig;
+
+        for (WorldSimulator simulator : simulators.values())
+        {
+            simulator.setPricingParams(worldConfig.getPricingParams(simulator.getWorldGroup()));
+        }
+    }
+
+    /**
+     * Set whether decay is performed lazily for all world groups.
+     * 
+     * @param lazyDecay Whether decay is performed lazily.
+     */
+    public synchronized void setLazyDecay(boolean lazyDecay)
+    {
+        this.lazyDecay = lazyDecay;
+
+        for (WorldSimulator simulator : simulators.values())
+        {
+            simulator.setLazyDecay(lazyDecay);
+        }
+    }
+
+    /**
+     * Set the fraction of the transaction movement that decays each day,
+     * for all world groups.
+     * 
+     * @param buyDecayPerDay The buy decay per day.
+     * @param saleDecayPerDay The sale decay per day.
+     */
+    public synchronized void setDecayPerDay(double buyDecayPerDay, double saleDecayPerDay)
+    {
+        this.buyDecayPerDay = buyDecayPerDay;
+        this.saleDecayPerDay = saleDecayPerDay;
+
+        for (WorldSimulator simulator : simulators.values())
+        {
+            simulator.setDecayPerDay(buyDecayPerDay, saleDecayPerDay);
+        }
+    }
+
+    /**
+     * Set the journal transaction movement is recorded in.
+     * 
+     * @param journal The journal, or null if movement should not be journaled.
+     */
+    public synchronized void setJournal(TransactionJournal journal)
+    {
+        this.journal = journal;
+
+        for (WorldSimulator simulator : simulators.values())
+        {
+            simulator.setJournal(journal);
+        }
+    }
+
+    /**
+     * Get the first journal segment whose movement is not included in this simulator.
+     * 
+     * @return The journal segment.
+     */
+    public long getJournalSegment()
+    {
+        return journalSegment;
+    }
+
+    /**
+     * Set the first journal segment whose movement is not included in this simulator.
+     * 
+     * @param journalSegment The journal segment.
+     */
+    public void setJournalSegment(long journalSegment)
+    {
+        this.journalSegment = journalSegment;
+    }
+
+    /**
+     * Get the simulator of a world group, creating it if it does not exist yet.
+     * 
+     * @param worldGroup The world group to get the simulator for.
+     * @return The simulator of the world group.
+     */
+    public WorldSimulator getWorldSimulator(String worldGroup)
+    {
+        WorldSimulator simulator = simulators.get(worldGroup);
+        if (simulator == null)
+        {
+            simulator = createWorldSimulator(worldGroup);
+        }
+
+        return simulator;
+    }
+
+    /**
+     * Create the simulator of a world group, unless another thread created it first.
+     * Settings are not changed while the simulator is created, so it cannot miss them.
+     * 
+     * @param worldGroup The world group to create the simulator for.
+     * @return The simulator of the world group.
+     */
+    private synchronized WorldSimulator createWorldSimulator(String worldGroup)
+    {
+        WorldSimulator simulator = simulators.get(worldGroup);
+        if (simulator == null)
+        {
+            simulator = new WorldSimulator(worldGroup);
+            addWorldSimulator(simulator);
+        }
+
+        return simulator;
     }
 
     /**
@@ -58,12 +291,7 @@ public class Simulator implements ConfigurationSerializable
      */
     public void addBuyMovement(String worldGroup, ItemStack[] items)
     {
-        if (!simulators.containsKey(worldGroup))
-        {
-            simulators.put(worldGroup, new WorldSimulator(worldGroup));
-        }
-
-        simulators.get(worldGroup).addBuyMovement(items);
+        getWorldSimulator(worldGroup).addBuyMovement(items);
     }
 
     /**
@@ -74,12 +302,54 @@ public class Simulator implements ConfigurationSerializable
      */
     public void addSaleMovement(String worldGroup, ItemStack[] items)
     {
-        if (!simulators.containsKey(worldGroup))
+        getWorldSimulator(worldGroup).addSaleMovement(items);
+    }
+
+    /**
+     * Record buy movement of an item in the simulator as pending. The movement
+     * is included in prices right away, but is only added to the demand when
+     * the movement is flushed.
+     * 
+     * @param worldGroup The world group to add the buy movement for.
+     * @param items The item to add the buy movement for.
+     */
+    public void bufferBuyMovement(String worldGroup, ItemStack[] items)
+    {
+        getWorldSimulator(worldGroup).bufferBuyMovement(items);
+    }
+
+    /**
+     * Record sale movement of an item in the simulator as pending. The movement
+     * is included in prices right away, but is only added to the demand when
+     * the movement is flushed.
+     * 
+     * @param worldGroup The world group to add the sale movement for.
+     * @param items The item to add the sale movement for.
+     */
+    public void bufferSaleMovement(String worldGroup, ItemStack[] items)
+    {
+        getWorldSimulator(worldGroup).bufferSaleMovement(items);
+    }
+
+    /**
+     * Add the pending movement of all world groups to their demand.
+     * 
+     * @return For each world group that had pending movement, the item keys
+     * of the items that had pending movement.
+     */
+    public Map<String, ItemKeyIndex> flushMovement()
+    {
+        Map<String, ItemKeyIndex> flushed = new HashMap<String, ItemKeyIndex>();
+        for (WorldSimulator simulator : simulators.values())
         {
-            simulators.put(worldGroup, new WorldSimulator(worldGroup));
+            ItemKeyIndex keys = simulator.flushMovement();
+            if (keys != null)
+            {
+                flushed.put(simulator.getWorldGroup(), keys);
+            }
         }
 
-        simulators.get(worldGroup).addSaleMovement(items);
+        return flushed;
     }
 
     /**
@@ -94,12 +364,37 @@ public class Simulator implements ConfigurationSerializable
     public double getTotalPrice(String worldGroup, ItemStack[] items,
         TransactionType type)
     {
-        if (!simulators.containsKey(worldGroup))
-        {
-            simulators.put(worldGroup, new WorldSimulator(worldGroup));
-        }
+        return getWorldSimulator(worldGroup).getPrice(items, type);
+    }
+
+    /**
+     * Quote the total prices of several arrays of item stacks for a given 
+     * transaction type and a given world group. All prices are calculated 
+     * against the same demand.
+     * 
+     * @param worldGroup The world group to quote in.
+     * @param baskets The arrays of item stacks to quote.
+     * @param type The transaction type of the transactions to quote.
+     * @return The quote of each array of item stacks.
+     */
+    public Quote[] getQuotes(String worldGroup, ItemStack[][] baskets,
+        TransactionType type)
+    {
+        return getWorldSimulator(worldGroup).getQuotes(baskets, type);
+    }
 
-        return simulators.get(worldGroup).getPrice(items, type);
+    /**
+     * Test whether a quote still holds: its world group is still simulated by
+     * the world simulator that quoted it, and the demand of none of its items
+     * changed since.
+     * 
+     * @param quote The quote.
+     * @return True if the quote still holds, false otherwise.
+     */
+    public boolean isCurrent(Quote quote)
+    {
+        WorldSimulator simulator = simulators.get(quote.getWorldGroup());
+        return simulator != null && simulator.isCurrent(quote);
     }
 
     /**
@@ -116,6 +411,20 @@ public class Simulator implements ConfigurationSerializable
         }
     }
 
+    /**
+     * Perform the decay for a period of time in all world groups. Groups 
+     * that decay lazily only have their quotes invalidated.
+     * 
+     * @param days The period of time in days.
+     */
+    public void performPeriodicDecay(double days)
+    {
+        for (WorldSimulator simulator : simulators.values())
+        {
+            simulator.performPeriodicDecay(days);
+        }
+    }
+
     /**
      * Get the price for a single transaction.
      * 
@@ -186,30 +495,17 @@ public class Simulator implements ConfigurationSerializable
         {
             if (highDemand <= 0)
             {   // Perform the calculation with the "sell" part of the equation
-                double e = Math.E;
                 price = 
-                    Math.log(1 + Math.pow(e, sellPriceSteepness * highDemand)) / sellPriceSteepness * (basePrice * 2) 
+                    Simulator.getSellPriceIntegral(highDemand, basePrice, sellPriceSteepness)
                     - 
-                    Math.log(1 + Math.pow(e, sellPriceSteepness * lowDemand)) / sellPriceSteepness * (basePrice * 2);
+                    Simulator.getSellPriceIntegral(lowDemand, basePrice, sellPriceSteepness);
             }
             else
             {   // Perform the calculation with the "buy" part of the equation
-                double e = Math.E;
-                double eToXHigh = Math.pow(e, buyPriceSteepness * highDemand);
-                double eToXLow = Math.pow(e, buyPriceSteepness * lowDemand);
-
                 price = 
-                    (
-                        ((eToXHigh + 1) * Math.log(eToXHigh + 1) + 1) / (buyPriceSteepness * (eToXHigh + 1)) * (basePrice * 2 * 2) 
-                        +
-                        buyPriceAsymptote / 2 * Math.pow(highDemand, 2)
-                        ) 
-                        -   
-                        (
-                            ((eToXLow + 1) * Math.log(eToXLow + 1) + 1) / (buyPriceSteepness * (eToXLow + 1)) * (basePrice * 2 * 2) 
-                            + 
-                            buyPriceAsymptote / 2 * Math.pow(lowDemand, 2)
-                            );
+                    Simulator.getBuyPriceIntegral(highDemand, basePrice, buyPriceSteepness, buyPriceAsymptote)
+                    -   
+                    Simulator.getBuyPriceIntegral(lowDemand, basePrice, buyPriceSteepness, buyPriceAsymptote);
             }
 
             if (type == TransactionType.BUY)
@@ -231,6 +527,46 @@ public class Simulator implements ConfigurationSerializable
         return price;
     }
 
+    /**
+     * Get the cumulative price at a demand on the "sell" part of the equation
+     * (i.e., demand at or below 0). The price of a transaction is the difference
+     * of the cumulative prices at its end points.
+     * 
+     * @param demand The demand.
+     * @param basePrice The base price (i.e., price at 0 demand)
+     * @param sellPriceSteepness The logistic function steepness below 0.
+     * @return The cumulative price.
+     */
+    public static double getSellPriceIntegral(double demand, double basePrice,
+        double sellPriceSteepness)
+    {
+        double e = Math.E;
+        return Math.log(1 + Math.pow(e, sellPriceSteepness * demand)) / sellPriceSteepness * (basePrice * 2);
+    }
+
+    /**
+     * Get the cumulative price at a demand on the "buy" part of the equation
+     * (i.e., demand above 0). The price of a transaction is the difference
+     * of the cumulative prices at its end points.
+     * 
+     * @param demand The demand.
+     * @param basePrice The base price (i.e., price at 0 demand)
+     * @param buyPriceSteepness The logistic function steepness above 0.
+     * @param buyPriceAsymptote The extra slope's steepness ("asymptote slope")
+     * above 0.
+     * @return The cumulative price.
+     */
+    public static double getBuyPriceIntegral(double demand, double basePrice,
+        double buyPriceSteepness, double buyPriceAsymptote)
+    {
+        double e = Math.E;
+        double eToX = Math.pow(e, buyPriceSteepness * demand);
+
+        return ((eToX + 1) * Math.log(eToX + 1) + 1) / (buyPriceSteepness * (eToX + 1)) * (basePrice * 2 * 2) 
+            +
+            buyPriceAsymptote / 2 * Math.pow(demand, 2);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -241,6 +577,7 @@ public class Simulator implements ConfigurationSerializable
     {
         Map<String, Object> map = new HashMap<String, Object>();
         map.put("simulators", simulators);
+        map.put("journalSegment", journalSegment);
 
         return map;
     }
@@ -0,0 +1,287 @@
+package org.kepow.economysim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bukkit.Material;
+
+/**
+ * Class representing a simulator state file in the binary format.
+ * 
+ * All values are big-endian. The file consists of:
+ * <ul>
+ * <li>a header: the magic number, the format version (int, short) and the
+ * first transaction journal segment not included in the file (long, since 
+ * version 2);</li>
+ * <li>the material dictionary: the number of materials (int), followed by 
+ * each material name (string);</li>
+ * <li>the world group sections: the number of sections (int), followed by 
+ * each section. A section holds the world group name (string), the time the 
+ * movement was decayed to (long), the number of records (int) and the records.</li>
+ * </ul>
+ * A record has a fixed width of 22 bytes: the material's dictionary index 
+ * (int), the data value (short), the buy movement and the sale movement 
+ * (both double). Strings are written as their UTF-8 byte length (unsigned 
+ * short) followed by the bytes.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class SimulatorFile 
+{
+    private static final int MAGIC = 0x45534D53; // "ESMS"
+    private static final short VERSION = 2;
+    private static final int RECORD_SIZE = 22;
+
+    private File file;
+    private boolean memoryMapped;
+
+    /**
+     * Constructor.
+     * @param file The file.
+     * @param memoryMapped Whether the file should be memory-mapped when reading.
+     */
+    public SimulatorFile(File file, boolean memoryMapped)
+    {
+        this.file = file;
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * Test whether the file exists.
+     * @return True if the file exists, false otherwise.
+     */
+    public boolean exists()
+    {
+        return file.exists();
+    }
+
+    /**
+     * Get the file.
+     * @return The file.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Read a simulator from the file.
+     * @return The simulator.
+     * @throws IOException If the file could not be read or is not a valid simulator file.
+     */
+    public Simulator read() throws IOException
+    {
+        ByteBuffer buffer;
+        if(memoryMapped)
+        {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try
+            {
+                FileChannel channel = randomAccessFile.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            finally
+            {
+                randomAccessFile.close();
+            }
+        }
+        else
+        {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        }
+
+        try
+        {
+            return decode(buffer);
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException("Unexpected end of simulator file " + file);
+        }
+    }
+
+    /**
+     * Write a simulator to the file. The file is replaced atomically.
+     * @param simulator The simulator to write.
+     * @throws IOException If the file could not be written.
+     */
+    public void write(Simulator simulator) throws IOException
+    {
+        Utils.writeFileAtomically(file, encode(simulator));
+    }
+
+    /**
+     * Decode a simulator.
+     * @param buffer The buffer to decode the simulator from.
+     * @return The simulator.
+     * @throws IOException If the buffer does not hold a valid simulator.
+     */
+    private Simulator decode(ByteBuffer buffer) throws IOException
+    {
+        if(buffer.getInt() != MAGIC)
+        {
+            throw new IOException("Not a simulator file: " + file);
+        }
+
+        short version = buffer.getShort();
+        if(version < 1 || version > VERSION)
+        {
+            throw new IOException("Unsupported simulator file version " + version + ": " + file);
+        }
+
+        long journalSegment = 0;
+        if(version >= 2)
+        {
+            journalSegment = buffer.getLong();
+        }
+
+        // Materials that no longer exist are null; their records are skipped
+        Material[] materials = new Material[buffer.getInt()];
+        for(int i = 0; i < materials.length; ++i)
+        {
+            materials[i] = Material.getMaterial(readString(buffer));
+        }
+
+        Simulator simulator = new Simulator();
+        simulator.setJournalSegment(journalSegment);
+
+        int numGroups = buffer.getInt();
+        for(int i = 0; i < numGroups; ++i)
+        {
+            String worldGroup = readString(buffer);
+            long decayTime = buffer.getLong();
+            int numRecords = buffer.getInt();
+
+            DemandStore demandStore = new DemandStore();
+            for(int j = 0; j < numRecords; ++j)
+            {
+                int material = buffer.getInt();
+                short data = buffer.getShort();
+                double buyMovement = buffer.getDouble();
+                double saleMovement = buffer.getDouble();
+
+                if(material < 0 || material >= materials.length)
+                {
+                    throw new IOException("Invalid material index " + material + ": " + file);
+                }
+                if(materials[material] == null)
+                {
+                    continue;
+                }
+
+                int key = ItemKey.of(materials[material], data);
+                demandStore.addBuyMovement(key, buyMovement, decayTime);
+                demandStore.addSaleMovement(key, saleMovement, decayTime);
+            }
+
+            simulator.addWorldSimulator(new WorldSimulator(worldGroup, demandStore));
+        }
+
+        return simulator;
+    }
+
+    /**
+     * Encode a simulator.
+     * @param simulator The simulator to encode.
+     * @return The encoded simulator.
+     * @throws IOException If the simulator could not be encoded.
+     */
+    private byte[] encode(Simulator simulator) throws IOException
+    {
+        long now = System.currentTimeMillis();
+
+        // Build the material dictionary
+        Material[] allMaterials = Material.values();
+        int[] dictionaryIndex = new int[allMaterials.length];
+        Arrays.fill(dictionaryIndex, -1);
+        List<Material> dictionary = new ArrayList<Material>();
+
+        int numRecords = 0;
+        for(WorldSimulator worldSimulator : simulator.getWorldSimulators())
+        {
+            DemandStore demandStore = worldSimulator.getDemandStore();
+            for(int i = 0; i < demandStore.size(); ++i)
+            {
+                Material material = ItemKey.getMaterial(demandStore.getKey(i));
+                if(dictionaryIndex[material.ordinal()] < 0)
+                {
+                    dictionaryIndex[material.ordinal()] = dictionary.size();
+                    dictionary.add(material);
+                }
+            }
+            numRecords += demandStore.size();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + numRecords * RECORD_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(simulator.getJournalSegment());
+
+        out.writeInt(dictionary.size());
+        for(Material material : dictionary)
+        {
+            writeString(out, material.name());
+        }
+
+        out.writeInt(simulator.getWorldSimulators().size());
+        for(WorldSimulator worldSimulator : simulator.getWorldSimulators())
+        {
+            DemandStore demandStore = worldSimulator.getDemandStore();
+
+            writeString(out, worldSimulator.getWorldGroup());
+            out.writeLong(now);
+            out.writeInt(demandStore.size());
+
+            for(int i = 0; i < demandStore.size(); ++i)
+            {
+                int key = demandStore.getKey(i);
+                out.writeInt(dictionaryIndex[ItemKey.getMaterial(key).ordinal()]);
+                out.writeShort(ItemKey.getData(key));
+                out.writeDouble(demandStore.getBuyMovement(i, now));
+                out.writeDouble(demandStore.getSaleMovement(i, now));
+            }
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a string.
+     * @param buffer The buffer to read from.
+     * @return The string.
+     * @throws IOException If the string could not be decoded.
+     */
+    private static String readString(ByteBuffer buffer) throws IOException
+    {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, "UTF8");
+    }
+
+    /**
+     * Write a string.
+     * @param out The stream to write to.
+     * @param string The string.
+     * @throws IOException If the string could not be written.
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        byte[] bytes = string.getBytes("UTF8");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,377 @@
+package org.kepow.economysim;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+/**
+ * Class representing the SQLite storage backend. Each shop and the 
+ * transaction movement of each item in each world group are stored in a 
+ * row of their own. When saving, only the rows that changed since the 
+ * previous save are written.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class SqliteStorageBackend implements StorageBackend
+{
+    private static final String PROPERTY_JOURNAL_SEGMENT = "journalSegment";
+
+    private File file;
+    private Connection connection = null;
+
+    // The demand rows as they were last loaded or saved
+    private Map<String, DemandStore> savedDemand;
+
+    /**
+     * Constructor.
+     * @param file The database file.
+     */
+    public SqliteStorageBackend(File file)
+    {
+        this.file = file;
+        this.savedDemand = new HashMap<String, DemandStore>();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#open()
+     */
+    public void open() throws IOException
+    {
+        try
+        {
+            Class.forName("org.sqlite.JDBC");
+            file.getParentFile().mkdirs();
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+
+            Statement statement = connection.createStatement();
+            try
+            {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS shops ("
+                    + "name TEXT PRIMARY KEY, "
+                    + "data TEXT NOT NULL)");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS demand ("
+                    + "world_group TEXT NOT NULL, "
+                    + "material TEXT NOT NULL, "
+                    + "data INTEGER NOT NULL, "
+                    + "buy_movement REAL NOT NULL, "
+                    + "sale_movement REAL NOT NULL, "
+                    + "decay_time INTEGER NOT NULL, "
+                    + "PRIMARY KEY (world_group, material, data))");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS properties ("
+                    + "name TEXT PRIMARY KEY, "
+                    + "value TEXT NOT NULL)");
+            }
+            finally
+            {
+                statement.close();
+            }
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IOException("SQLite driver not found", e);
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Could not open database " + file, e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#hasData()
+     */
+    public boolean hasData() throws IOException
+    {
+        try
+        {
+            Statement statement = connection.createStatement();
+            try
+            {
+                ResultSet result = statement.executeQuery("SELECT "
+                    + "EXISTS (SELECT 1 FROM shops) "
+                    + "OR EXISTS (SELECT 1 FROM demand) "
+                    + "OR EXISTS (SELECT 1 FROM properties)");
+                return result.next() && result.getBoolean(1);
+            }
+            finally
+            {
+                statement.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Could not read database " + file, e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#loadShops()
+     */
+    public ShopList loadShops() throws IOException
+    {
+        ShopList shopList = new ShopList();
+
+        try
+        {
+            Statement statement = connection.createStatement();
+            try
+            {
+                ResultSet result = statement.executeQuery("SELECT data FROM shops");
+                while(result.next())
+                {
+                    YamlConfiguration config = new YamlConfiguration();
+                    config.loadFromString(result.getString(1));
+                    shopList.add((Shop) config.get("shop"));
+                }
+
+                // The shops are stored as they were loaded
+                shopList.collectChanges();
+            }
+            finally
+            {
+                statement.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Could not load shops from " + file, e);
+        }
+        catch (InvalidConfigurationException e)
+        {
+            throw new IOException("Could not decode shop in " + file, e);
+        }
+
+        return shopList;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#loadSimulator()
+     */
+    public Simulator loadSimulator() throws IOException
+    {
+        Simulator simulator = new Simulator();
+
+        try
+        {
+            Statement statement = connection.createStatement();
+            try
+            {
+                ResultSet result = statement.executeQuery("SELECT value FROM properties WHERE name = '" + PROPERTY_JOURNAL_SEGMENT + "'");
+                if(result.next())
+                {
+                    simulator.setJournalSegment(Long.parseLong(result.getString(1)));
+                }
+
+                result = statement.executeQuery("SELECT world_group, material, data, buy_movement, sale_movement, decay_time FROM demand");
+                while(result.next())
+                {
+                    Material material = Material.getMaterial(result.getString(2));
+                    if(material == null)
+                    {   // The material no longer exists
+                        continue;
+                    }
+
+                    DemandStore demandStore = simulator.getWorldSimulator(result.getString(1)).getDemandStore();
+                    int key = ItemKey.of(material, (short) result.getInt(3));
+                    long decayTime = result.getLong(6);
+                    demandStore.addBuyMovement(key, result.getDouble(4), decayTime);
+                    demandStore.addSaleMovement(key, result.getDouble(5), decayTime);
+                }
+            }
+            finally
+            {
+                statement.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new IOException("Could not load simulator from " + file, e);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Invalid journal segment in " + file, e);
+        }
+
+        for(WorldSimulator worldSimulator : simulator.getWorldSimulators())
+        {
+            savedDemand.put(worldSimulator.getWorldGroup(), new DemandStore(worldSimulator.getDemandStore()));
+        }
+
+        return simulator;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#saveShops(org.kepow.economysim.ShopList, java.util.Set)
+     */
+    public void saveShops(ShopList shopList, Set<String> changedShops) throws IOException
+    {
+        try
+        {
+            connection.setAutoCommit(false);
+            PreparedStatement upsert = connection.prepareStatement("INSERT OR REPLACE INTO shops (name, data) VALUES (?, ?)");
+            PreparedStatement delete = connection.prepareStatement("DELETE FROM shops WHERE name = ?");
+            try
+            {
+                for(String name : changedShops)
+                {
+                    Shop shop = shopList.get(name);
+                    if(shop != null)
+                    {
+                        YamlConfiguration config = new YamlConfiguration();
+                        config.set("shop", shop);
+
+                        upsert.setString(1, name);
+                        upsert.setString(2, config.saveToString());
+                        upsert.addBatch();
+                    }
+                    else
+                    {   // The shop was removed
+                        delete.setString(1, name);
+                        delete.addBatch();
+                    }
+                }
+
+                upsert.executeBatch();
+                delete.executeBatch();
+                connection.commit();
+            }
+            finally
+            {
+                upsert.close();
+                delete.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            rollback();
+            throw new IOException("Could not save shops to " + file, e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#saveSimulator(org.kepow.economysim.Simulator)
+     */
+    public void saveSimulator(Simulator simulator) throws IOException
+    {
+        Map<String, DemandStore> demand = new HashMap<String, DemandStore>();
+
+        // Movement is stored as it is at the time of saving
+        long now = System.currentTimeMillis();
+
+        try
+        {
+            connection.setAutoCommit(false);
+            PreparedStatement upsert = connection.prepareStatement("INSERT OR REPLACE INTO demand "
+                + "(world_group, material, data, buy_movement, sale_movement, decay_time) "
+                + "VALUES (?, ?, ?, ?, ?, ?)");
+            PreparedStatement property = connection.prepareStatement("INSERT OR REPLACE INTO properties (name, value) VALUES (?, ?)");
+            try
+            {
+                for(WorldSimulator worldSimulator : simulator.getWorldSimulators())
+                {
+                    String worldGroup = worldSimulator.getWorldGroup();
+                    DemandStore demandStore = worldSimulator.getDemandStore();
+                    DemandStore saved = savedDemand.get(worldGroup);
+
+                    for(int i = 0; i < demandStore.size(); ++i)
+                    {
+                        int key = demandStore.getKey(i);
+                        double buyMovement = demandStore.getBuyMovement(i, now);
+                        double saleMovement = demandStore.getSaleMovement(i, now);
+
+                        int savedSlot = saved == null ? -1 : saved.indexOf(key);
+                        if(savedSlot >= 0
+                            && saved.getBuyMovement(savedSlot, now) == buyMovement
+                            && saved.getSaleMovement(savedSlot, now) == saleMovement)
+                        {   // The saved row still holds, as it would be decayed to the same movement
+                            continue;
+                        }
+
+                        upsert.setString(1, worldGroup);
+                        upsert.setString(2, ItemKey.getMaterial(key).name());
+                        upsert.setInt(3, ItemKey.getData(key));
+                        upsert.setDouble(4, buyMovement);
+                        upsert.setDouble(5, saleMovement);
+                        upsert.setLong(6, now);
+                        upsert.addBatch();
+                    }
+
+                    demand.put(worldGroup, demandStore);
+                }
+
+                property.setString(1, PROPERTY_JOURNAL_SEGMENT);
+                property.setString(2, Long.toString(simulator.getJournalSegment()));
+                property.addBatch();
+
+                upsert.executeBatch();
+                property.executeBatch();
+                connection.commit();
+            }
+            finally
+            {
+                upsert.close();
+                property.close();
+            }
+        }
+        catch (SQLException e)
+        {
+            rollback();
+            throw new IOException("Could not save simulator to " + file, e);
+        }
+
+        savedDemand = demand;
+    }
+
+    /**
+     * Roll back the current transaction after a failed save.
+     */
+    private void rollback()
+    {
+        try
+        {
+            connection.rollback();
+        }
+        catch (SQLException e)
+        {
+            PluginState.getPlugin().getLogger().severe("Could not roll back database transaction: " + e.getMessage());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#close()
+     */
+    public void close()
+    {
+        if(connection != null)
+        {
+            try
+            {
+                connection.close();
+            }
+            catch (SQLException e)
+            {
+                PluginState.getPlugin().getLogger().severe("Could not close database " + file + ": " + e.getMessage());
+            }
+            connection = null;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.kepow.economysim;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that saves the plugin state in the background. A snapshot of the 
+ * state is taken on the main thread; encoding and writing the snapshot 
+ * happens on a single background thread. Saves requested while an earlier 
+ * save is still waiting are coalesced, so only the latest snapshot is written.
+ * The shops are only copied and written when a shop changed since the 
+ * previous save.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class StateSaver 
+{
+    /**
+     * Class representing a snapshot of the plugin state.
+     * 
+     * @author Thomas Churchman
+     *
+     */
+    private class Snapshot
+    {
+        private ShopList shopList = null;
+        private Set<String> changedShops;
+        private Simulator simulator;
+
+        /**
+         * Constructor. Copies the current plugin state.
+         */
+        public Snapshot()
+        {
+            changedShops = PluginState.getShopList().collectChanges();
+            if(!changedShops.isEmpty())
+            {
+                shopList = new ShopList(PluginState.getShopList());
+            }
+
+            // Movement of the current tick is journaled when it is flushed
+            PluginState.getPlugin().flushMovement();
+
+            // Movement recorded from now on is not part of the snapshot
+            simulator = PluginState.getSimulator().snapshot();
+        }
+
+        /**
+         * Take over the shop changes of an earlier snapshot that was not written.
+         * @param snapshot The earlier snapshot.
+         */
+        public void mergeShops(Snapshot snapshot)
+        {
+            if(snapshot.shopList == null)
+            {
+                return;
+            }
+
+            if(shopList == null)
+            {   // No shops changed since, so the earlier copy is still current
+                shopList = snapshot.shopList;
+            }
+            changedShops.addAll(snapshot.changedShops);
+        }
+    }
+
+    /**
+     * Class representing the background task writing the latest snapshot.
+     * 
+     * @author Thomas Churchman
+     *
+     */
+    private class SaveTask implements Runnable
+    {
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run()
+        {
+            Snapshot snapshot = takePendingSnapshot();
+            if(snapshot != null)
+            {   // Otherwise, a later task already wrote the snapshot
+                write(snapshot);
+            }
+        }
+    }
+
+    private static final long FLUSH_TIMEOUT_SECONDS = 60;
+
+    private ExecutorService executor;
+    private StorageBackend storage;
+    private TransactionJournal journal;
+
+    // Guarded by this
+    private Snapshot pendingSnapshot = null;
+    private Snapshot unsavedSnapshot = null;
+
+    /**
+     * Constructor.
+     * @param storage The storage backend to save the plugin state to.
+     * @param journal The transaction journal to compact after saving, or null
+     * if movement is not journaled.
+     */
+    public StateSaver(StorageBackend storage, TransactionJournal journal)
+    {
+        this.storage = storage;
+        this.journal = journal;
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Take a snapshot of the plugin state and save it in the background.
+     * Must be called from the main thread.
+     */
+    public void save()
+    {
+        setPendingSnapshot(new Snapshot());
+        executor.execute(new SaveTask());
+    }
+
+    /**
+     * Take a snapshot of the plugin state and save it, waiting for the save 
+     * and all earlier saves to complete. Must be called from the main thread. 
+     * No saves can be performed afterwards.
+     */
+    public void flush()
+    {
+        // The snapshot is written by the background thread as well, so that 
+        // no two writes to the same files can ever run at the same time
+        save();
+        executor.shutdown();
+
+        try
+        {
+            if(!executor.awaitTermination(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            {
+                PluginState.getPlugin().getLogger().severe("Timed out waiting for saves to complete; they continue in the background");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Make a snapshot the one to be written next. The shop changes of the 
+     * snapshot it replaces, and of a snapshot whose shops could not be 
+     * written, are carried over.
+     * @param snapshot The snapshot.
+     */
+    private synchronized void setPendingSnapshot(Snapshot snapshot)
+    {
+        if(unsavedSnapshot != null)
+        {
+            snapshot.mergeShops(unsavedSnapshot);
+            unsavedSnapshot = null;
+        }
+        if(pendingSnapshot != null)
+        {
+            snapshot.mergeShops(pendingSnapshot);
+        }
+        pendingSnapshot = snapshot;
+    }
+
+    /**
+     * Take the snapshot to be written next.
+     * @return The snapshot, or null if there is none.
+     */
+    private synchronized Snapshot takePendingSnapshot()
+    {
+        Snapshot snapshot = pendingSnapshot;
+        pendingSnapshot = null;
+        return snapshot;
+    }
+
+    /**
+     * Keep the shop changes of a snapshot whose shops could not be written, 
+     * so they are written with the next snapshot.
+     * @param snapshot The snapshot.
+     */
+    private synchronized void retainShops(Snapshot snapshot)
+    {
+        if(pendingSnapshot != null)
+        {
+            pendingSnapshot.mergeShops(snapshot);
+        }
+        else
+        {
+            unsavedSnapshot = snapshot;
+        }
+    }
+
+    /**
+     * Write a snapshot to the storage backend.
+     * @param snapshot The snapshot to write.
+     */
+    private void write(Snapshot snapshot)
+    {
+        if(snapshot.shopList != null)
+        {
+            try
+            {
+                storage.saveShops(snapshot.shopList, snapshot.changedShops);
+            }
+            catch (IOException ex)
+            {
+                PluginState.getPlugin().getLogger().severe("Could not save shops: " + ex.getMessage());
+                retainShops(snapshot);
+            }
+        }
+
+        try
+        {
+            storage.saveSimulator(snapshot.simulator);
+        }
+        catch (IOException ex)
+        {
+            PluginState.getPlugin().getLogger().severe("Could not save simulator: " + ex.getMessage());
+            return;
+        }
+
+        if(journal != null)
+        {   // The journaled movement is part of the saved snapshot now
+            journal.deleteSegmentsBefore(snapshot.simulator.getJournalSegment());
+        }
+    }
+}
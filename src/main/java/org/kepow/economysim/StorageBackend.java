@@ -0,0 +1,67 @@
+package org.kepow.economysim;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Interface representing a storage backend the shops and the simulator 
+ * state are loaded from and saved to. 
+ * 
+ * Loading happens on the main thread. Saving happens on a single 
+ * background thread, with snapshots that are not modified afterwards; 
+ * saves are never performed concurrently.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public interface StorageBackend 
+{
+    /**
+     * Open the backend.
+     * @throws IOException If the backend could not be opened.
+     */
+    public void open() throws IOException;
+
+    /**
+     * Test whether the backend holds any state.
+     * @return True if the backend holds shops or simulator state, false otherwise.
+     * @throws IOException If the backend could not be read.
+     */
+    public boolean hasData() throws IOException;
+
+    /**
+     * Load the shops.
+     * @return The shop list.
+     * @throws IOException If the shops could not be loaded.
+     */
+    public ShopList loadShops() throws IOException;
+
+    /**
+     * Load the simulator.
+     * @return The simulator.
+     * @throws IOException If the simulator could not be loaded.
+     */
+    public Simulator loadSimulator() throws IOException;
+
+    /**
+     * Save the shops. Backends that store shops separately only have to 
+     * write the changed shops.
+     * @param shopList A snapshot of the shop list.
+     * @param changedShops The names of the shops that were added, modified or 
+     * removed since the shops were last saved.
+     * @throws IOException If the shops could not be saved.
+     */
+    public void saveShops(ShopList shopList, Set<String> changedShops) throws IOException;
+
+    /**
+     * Save the simulator.
+     * @param simulator A snapshot of the simulator.
+     * @throws IOException If the simulator could not be saved.
+     */
+    public void saveSimulator(Simulator simulator) throws IOException;
+
+    /**
+     * Close the backend.
+     */
+    public void close();
+}
@@ -0,0 +1,522 @@
+package org.kepow.economysim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bukkit.Material;
+import org.kepow.economysim.Simulator.TransactionType;
+
+/**
+ * Class representing the write-ahead journal of transaction movement.
+ * 
+ * Movement is appended to an in-memory buffer on the calling thread and 
+ * written to disk in batches on a background thread, so appending never 
+ * waits for disk access. The journal is split into numbered segments. 
+ * Taking a snapshot of the simulator starts a new segment; segments 
+ * before the one recorded in the snapshot are deleted once the snapshot 
+ * has been saved. On startup, the segments the saved snapshot does not 
+ * include yet are replayed.
+ * 
+ * Each segment starts with the magic number and the format version (int, 
+ * short), followed by records starting with a record type (byte):
+ * <ul>
+ * <li>a group record defines the next world group id of the segment, and 
+ * holds the world group name (string);</li>
+ * <li>a material record defines the next material id of the segment, and 
+ * holds the material name (string);</li>
+ * <li>a movement record has a fixed width of 26 bytes, and holds the 
+ * transaction type (byte), the world group id (short), the material id 
+ * (int), the data value (short), the movement (double) and the time in 
+ * milliseconds (long).</li>
+ * </ul>
+ * Strings are written as their UTF-8 byte length (unsigned short) followed
+ * by the bytes.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class TransactionJournal 
+{
+    /**
+     * Class representing buffered journal data of a segment.
+     * 
+     * @author Thomas Churchman
+     *
+     */
+    private class Chunk
+    {
+        private long segment;
+        private byte[] data;
+
+        /**
+         * Constructor.
+         * @param segment The segment the data belongs to.
+         * @param data The data.
+         */
+        public Chunk(long segment, byte[] data)
+        {
+            this.segment = segment;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Class representing the background task writing buffered data.
+     * 
+     * @author Thomas Churchman
+     *
+     */
+    private class FlushTask implements Runnable
+    {
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run()
+        {
+            flush();
+        }
+    }
+
+    private static final int MAGIC = 0x45534A52; // "ESJR"
+    private static final short VERSION = 1;
+
+    private static final byte RECORD_GROUP = 1;
+    private static final byte RECORD_MATERIAL = 2;
+    private static final byte RECORD_MOVEMENT = 3;
+
+    private static final byte TYPE_BUY = 0;
+    private static final byte TYPE_SELL = 1;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+    private File directory;
+    private long flushInterval;
+    private ScheduledExecutorService executor;
+
+    // State of the segment being appended to; guarded by this
+    private long segment;
+    private ByteArrayOutputStream buffer;
+    private DataOutputStream out;
+    private Map<String, Integer> groupIds;
+    private int[] materialIds;
+    private int numMaterials;
+    private Queue<Chunk> chunks;
+
+    // State of the background writer; guarded by writeLock
+    private final Object writeLock = new Object();
+    private long openSegment = -1;
+    private FileOutputStream openStream = null;
+    private long deletedBefore = 0;
+
+    /**
+     * Constructor. 
+     * @param directory The directory holding the journal segments.
+     * @param flushInterval The interval in milliseconds with which buffered 
+     * movement is written to disk.
+     */
+    public TransactionJournal(File directory, long flushInterval)
+    {
+        this.directory = directory;
+        this.flushInterval = flushInterval;
+        this.chunks = new LinkedList<Chunk>();
+    }
+
+    /**
+     * Replay the segments a simulator does not include yet, and start 
+     * journaling in a new segment. 
+     * @param simulator The simulator to replay the movement into.
+     * @throws IOException If the segments could not be read.
+     */
+    public void open(Simulator simulator) throws IOException
+    {
+        directory.mkdirs();
+
+        long nextSegment = simulator.getJournalSegment();
+        for(long segment : getSegments())
+        {
+            if(segment >= simulator.getJournalSegment())
+            {
+                replay(segment, simulator);
+            }
+            nextSegment = Math.max(nextSegment, segment + 1);
+        }
+
+        synchronized(this)
+        {
+            startSegment(nextSegment);
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(new FlushTask(), flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write all buffered movement and stop the background writer.
+     */
+    public void close()
+    {
+        if(executor != null)
+        {
+            executor.shutdown();
+            try
+            {
+                executor.awaitTermination(60, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        flush();
+
+        synchronized(writeLock)
+        {
+            closeOpenSegment();
+        }
+    }
+
+    /**
+     * Append transaction movement to the journal. 
+     * @param worldGroup The world group of the movement.
+     * @param key The item key.
+     * @param movement The movement.
+     * @param type The transaction type.
+     * @param time The time in milliseconds the movement happened at.
+     */
+    public synchronized void append(String worldGroup, int key, double movement, TransactionType type, long time)
+    {
+        try
+        {
+            Integer groupId = groupIds.get(worldGroup);
+            if(groupId == null)
+            {
+                groupId = groupIds.size();
+                groupIds.put(worldGroup, groupId);
+
+                out.writeByte(RECORD_GROUP);
+                writeString(out, worldGroup);
+            }
+
+            Material material = ItemKey.getMaterial(key);
+            int materialId = materialIds[material.ordinal()];
+            if(materialId < 0)
+            {
+                materialId = numMaterials++;
+                materialIds[material.ordinal()] = materialId;
+
+                out.writeByte(RECORD_MATERIAL);
+                writeString(out, material.name());
+            }
+
+            out.writeByte(RECORD_MOVEMENT);
+            out.writeByte(type == TransactionType.BUY ? TYPE_BUY : TYPE_SELL);
+            out.writeShort(groupId);
+            out.writeInt(materialId);
+            out.writeShort(ItemKey.getData(key));
+            out.writeDouble(movement);
+            out.writeLong(time);
+        }
+        catch (IOException e)
+        {   // Writing to a byte array stream does not fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Start a new segment. Movement appended afterwards is not included in a 
+     * snapshot taken right before calling this method.
+     * @return The number of the new segment.
+     */
+    public synchronized long rotate()
+    {
+        chunks.add(new Chunk(segment, buffer.toByteArray()));
+        startSegment(segment + 1);
+        return segment;
+    }
+
+    /**
+     * Delete the segments before a segment, after a snapshot including them 
+     * has been saved.
+     * @param segment The first segment not included in the snapshot.
+     */
+    public void deleteSegmentsBefore(long segment)
+    {
+        synchronized(writeLock)
+        {
+            deletedBefore = Math.max(deletedBefore, segment);
+
+            if(openSegment >= 0 && openSegment < segment)
+            {
+                closeOpenSegment();
+            }
+
+            for(long existing : getSegments())
+            {
+                if(existing < segment)
+                {
+                    getSegmentFile(existing).delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Start buffering a new segment. Must be called while holding the lock on this.
+     * @param segment The number of the new segment.
+     */
+    private void startSegment(long segment)
+    {
+        this.segment = segment;
+        this.groupIds = new HashMap<String, Integer>();
+        this.materialIds = new int[Material.values().length];
+        Arrays.fill(this.materialIds, -1);
+        this.numMaterials = 0;
+
+        this.buffer = new ByteArrayOutputStream();
+        this.out = new DataOutputStream(buffer);
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+        }
+        catch (IOException e)
+        {   // Writing to a byte array stream does not fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write all buffered movement to disk.
+     */
+    private void flush()
+    {
+        List<Chunk> toWrite = new ArrayList<Chunk>();
+        synchronized(this)
+        {
+            if(buffer == null)
+            {
+                return;
+            }
+
+            toWrite.addAll(chunks);
+            chunks.clear();
+
+            if(buffer.size() > 0)
+            {
+                toWrite.add(new Chunk(segment, buffer.toByteArray()));
+                buffer.reset();
+            }
+        }
+
+        synchronized(writeLock)
+        {
+            try
+            {
+                for(Chunk chunk : toWrite)
+                {
+                    if(chunk.segment < deletedBefore)
+                    {   // Already included in a saved snapshot
+                        continue;
+                    }
+
+                    if(chunk.segment != openSegment)
+                    {
+                        closeOpenSegment();
+                        openStream = new FileOutputStream(getSegmentFile(chunk.segment), true);
+                        openSegment = chunk.segment;
+                    }
+                    openStream.write(chunk.data);
+                }
+
+                if(openStream != null)
+                {
+                    openStream.getChannel().force(false);
+                }
+            }
+            catch (IOException e)
+            {
+                PluginState.getPlugin().getLogger().severe("Could not write to transaction journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Close the segment being written to. Must be called while holding writeLock.
+     */
+    private void closeOpenSegment()
+    {
+        if(openStream != null)
+        {
+            try
+            {
+                openStream.close();
+            }
+            catch (IOException e)
+            {
+                PluginState.getPlugin().getLogger().severe("Could not close transaction journal segment: " + e.getMessage());
+            }
+            openStream = null;
+            openSegment = -1;
+        }
+    }
+
+    /**
+     * Replay a segment.
+     * @param segment The number of the segment.
+     * @param simulator The simulator to replay the movement into.
+     * @throws IOException If the segment could not be read.
+     */
+    private void replay(long segment, Simulator simulator) throws IOException
+    {
+        File file = getSegmentFile(segment);
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+        List<String> groups = new ArrayList<String>();
+        List<Material> materials = new ArrayList<Material>();
+
+        try
+        {
+            if(buffer.getInt() != MAGIC)
+            {
+                throw new IOException("Not a journal segment: " + file);
+            }
+            short version = buffer.getShort();
+            if(version != VERSION)
+            {
+                throw new IOException("Unsupported journal segment version " + version + ": " + file);
+            }
+
+            while(buffer.hasRemaining())
+            {
+                byte record = buffer.get();
+                if(record == RECORD_GROUP)
+                {
+                    groups.add(readString(buffer));
+                }
+                else if(record == RECORD_MATERIAL)
+                {   // Materials that no longer exist are null; their movement is skipped
+                    materials.add(Material.getMaterial(readString(buffer)));
+                }
+                else if(record == RECORD_MOVEMENT)
+                {
+                    byte type = buffer.get();
+                    String group = groups.get(buffer.getShort());
+                    Material material = materials.get(buffer.getInt());
+                    short data = buffer.getShort();
+                    double movement = buffer.getDouble();
+                    long time = buffer.getLong();
+
+                    if(material == null)
+                    {
+                        continue;
+                    }
+
+                    DemandStore demandStore = simulator.getWorldSimulator(group).getDemandStore();
+                    int key = ItemKey.of(material, data);
+                    if(type == TYPE_BUY)
+                    {
+                        demandStore.addBuyMovement(key, movement, time);
+                    }
+                    else
+                    {
+                        demandStore.addSaleMovement(key, movement, time);
+                    }
+                }
+                else
+                {
+                    throw new IOException("Invalid journal record type " + record + ": " + file);
+                }
+            }
+        }
+        catch (BufferUnderflowException e)
+        {   // The last batch was only partially written; it is discarded
+            PluginState.getPlugin().getLogger().warning("Discarding incomplete record at the end of " + file);
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            throw new IOException("Undefined group or material in " + file);
+        }
+    }
+
+    /**
+     * Get the numbers of the segments in the journal directory, in ascending order.
+     * @return The segment numbers.
+     */
+    private List<Long> getSegments()
+    {
+        List<Long> segments = new ArrayList<Long>();
+
+        String[] names = directory.list();
+        if(names != null)
+        {
+            for(String name : names)
+            {
+                Matcher matcher = SEGMENT_NAME.matcher(name);
+                if(matcher.matches())
+                {
+                    segments.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Get the file of a segment.
+     * @param segment The segment number.
+     * @return The file.
+     */
+    private File getSegmentFile(long segment)
+    {
+        return new File(directory, String.format("segment-%012d.dat", segment));
+    }
+
+    /**
+     * Read a string.
+     * @param buffer The buffer to read from.
+     * @return The string.
+     * @throws IOException If the string could not be decoded.
+     */
+    private static String readString(ByteBuffer buffer) throws IOException
+    {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, "UTF8");
+    }
+
+    /**
+     * Write a string.
+     * @param out The stream to write to.
+     * @param string The string.
+     * @throws IOException If the string could not be written.
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        byte[] bytes = string.getBytes("UTF8");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -1,12 +1,16 @@
 package org.kepow.economysim;
 
-import java.util.Arrays;
-import java.util.Comparator;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.UUID;
 
-import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
@@ -34,6 +38,81 @@ public class Utils
         }
     }
 
+    /**
+     * Write data to a file. The data is first written to a temporary file, 
+     * which then replaces the file, so that the file is never left partially 
+     * written. 
+     * @param file The file to write to.
+     * @param data The data to write.
+     * @throws IOException If the data could not be written.
+     */
+    public static void writeFileAtomically(File file, byte[] data) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try
+        {
+            out.write(data);
+
+            // The data must be on disk before the file is replaced by it
+            out.getChannel().force(true);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        try
+        {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException ex)
+        {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        syncDirectory(file.getParentFile());
+    }
+
+    /**
+     * Force changes to the entries of a directory (e.g., a file being 
+     * replaced) to disk. Does nothing on platforms that cannot open 
+     * directories.
+     * @param directory The directory.
+     */
+    private static void syncDirectory(File directory)
+    {
+        FileChannel channel;
+        try
+        {
+            channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+        }
+        catch (IOException ex)
+        {   // E.g., on Windows
+            return;
+        }
+
+        try
+        {
+            channel.force(true);
+        }
+        catch (IOException ex)
+        {   // Not supported for directories on every platform
+        }
+        finally
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException ex)
+            {
+            }
+        }
+    }
+
     /**
      * Round a number to the given number of decimals.
      * @param d The number.
@@ -54,20 +133,13 @@ public class Utils
      */
     public static OfflinePlayer getPlayer(String name)
     {
-        OfflinePlayer[] players = PluginState.getPlugin().getServer().getOfflinePlayers();
-
-        OfflinePlayer ret = null;
-
-        for(OfflinePlayer player : players)
+        UUID uuid = PluginState.getPlugin().getPlayerNameIndex().getUniqueId(name);
+        if(uuid == null)
         {
-            if(player.getName().equalsIgnoreCase(name))
-            {
-                ret = player;
-                break;
-            }
+            return null;
         }
 
-        return ret;
+        return PluginState.getPlugin().getServer().getOfflinePlayer(uuid);
     }
 
     /**
@@ -90,173 +162,7 @@ public class Utils
      */
     public static String prepareMessage(String message, Object... replacementsArray)
     {
-        HashMap<String, Object> replacements = new HashMap<String, Object>();
-
-        // Feed replacements and replaceWiths into the replacement map.
-        if(replacementsArray.length % 2 == 0)
-        {
-            for(int i = 0; i < replacementsArray.length; i+=2)
-            {
-                String replace = (String) replacementsArray[i];
-                replacements.put(replace, replacementsArray[i+1]);
-            }
-        }
-
-        // Get placeholder message.
-        String placeholder = PluginState.getMessagesCustomConfig().getCustomConfig().getString("messages." + message);
-        if(placeholder == null)
-        {
-            placeholder = "String not found: " + message;
-        }
-
-        // First parse the message for any potential &word|dependent% occurrences.
-        // The words are replaced with the value the word codes for (in config.yml)
-        // with the given switch (e.g., "&currency|1%" could code for "%currencySingular"). 
-        String placeholderCopy = placeholder; 
-
-        // Find all &...|...% occurrences
-        Pattern pattern = Pattern.compile("&[a-zA-Z]+\\|[a-zA-Z]+%");
-        Matcher m = pattern.matcher(placeholder);
-
-        while(m.find())
-        {	// For every occurrence:
-            // Find the part of the string that matched
-            String match = m.group(0);
-
-            // Removed the first (&) and last (%) parts of the string and
-            // then split the string on |
-            String[] matches = match.substring(1, match.length()-1).split("\\|");
-
-            // The first part is the word we're finding the value for
-            String word = matches[0];
-            // The second part is the case of the word we want (e.g., case "1" of currency)
-            String dependent = matches[1];
-
-
-            if(replacements.containsKey("%" + dependent))
-            {	// We know the value of the case
-                Object obj = replacements.get("%" + dependent);
-                String replaceWith = null;
-
-                // Find the type of the case's value and generate the case value to use
-                if(obj instanceof Integer)
-                {
-                    int val = (Integer) obj;
-                    replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + "." + val);
-                } 
-                else if(obj instanceof Double)
-                {
-                    double val = Utils.round((Double) obj, PluginState.getPlugin().getConfig().getInt("display.numberOfDecimals"));
-
-                    if ((val == Math.floor(val)) && !Double.isInfinite(val)) {
-                        int floor = (int) Math.floor(val);
-                        replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + "." + floor);
-                    }
-                }
-                else
-                {
-                    String val = obj.toString();
-                    replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + "." + val);
-                }
-
-                // No (existing) case found, default to case "other"
-                if(replaceWith == null)
-                {
-                    replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + ".other");
-                }
-
-                placeholderCopy = placeholderCopy.replace(match, replaceWith);
-            }
-            else
-            {	// We don't know the value of the case, default to "other".
-                String replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + ".other");
-                if(replaceWith != null)
-                {
-                    placeholderCopy = placeholderCopy.replace(match, replaceWith);
-                }
-            }
-        }
-
-        // Find all &...% occurrences
-        pattern = Pattern.compile("&[a-zA-Z]+%");
-        m = pattern.matcher(placeholder);
-
-        while(m.find())
-        {	// For every occurrence:
-            // Find the part of the string that matched
-            String match = m.group(0);
-
-            // Removed the first (&) and last (%) parts of the string
-            String word = match.substring(1, match.length()-1);		
-
-            String replaceWith = PluginState.getMessagesCustomConfig().getCustomConfig().getString("words." + word + ".other");
-
-            placeholderCopy = placeholderCopy.replace(match, replaceWith);
-        }
-
-        placeholder = placeholderCopy;
-
-        // Sort the to-be-replaced strings by length in descending order to make sure that
-        // strings such as "%test" and "%te" won't interfere (if "%te" were to be evaluated 
-        // first, the result on "%test"would be "{%te}st").
-        String[] replacementKeys = replacements.keySet().toArray(new String[0]);
-        Arrays.sort(replacementKeys, new Comparator<String>()
-            {
-            public int compare(String s1, String s2)
-            {
-                return s2.length() - s1.length();
-            }
-            });
-
-        for(String replace : replacementKeys)
-        {	// For each to-be-replaced string
-
-            // Find the string value of the replacement...
-            Object obj = replacements.get(replace);
-            String replaceWith = null;
-            if(obj instanceof Integer)
-            {
-                replaceWith = ""+(Integer) obj;
-            } 
-            else if(obj instanceof Double)
-            {
-                replaceWith = String.format("%."+PluginState.getPlugin().getConfig().getInt("display.numDecimals")+"f", (Double) obj);
-            }
-            else
-            {
-                replaceWith = obj.toString();
-            }
-
-            // ... and replace.
-            placeholder = placeholder.replaceAll(replace, replaceWith);
-        }
-
-        // Replace string formatting codes
-        placeholder = placeholder.replaceAll("&0", ChatColor.BLACK.toString());
-        placeholder = placeholder.replaceAll("&1", ChatColor.DARK_BLUE.toString());
-        placeholder = placeholder.replaceAll("&2", ChatColor.DARK_GREEN.toString());
-        placeholder = placeholder.replaceAll("&3", ChatColor.DARK_AQUA.toString());
-        placeholder = placeholder.replaceAll("&4", ChatColor.DARK_RED.toString());
-        placeholder = placeholder.replaceAll("&5", ChatColor.DARK_PURPLE.toString());
-        placeholder = placeholder.replaceAll("&6", ChatColor.GOLD.toString());
-        placeholder = placeholder.replaceAll("&7", ChatColor.GRAY.toString());
-        placeholder = placeholder.replaceAll("&8", ChatColor.DARK_GRAY.toString());
-        placeholder = placeholder.replaceAll("&9", ChatColor.BLUE.toString());
-        placeholder = placeholder.replaceAll("&a", ChatColor.GREEN.toString());
-        placeholder = placeholder.replaceAll("&b", ChatColor.AQUA.toString());
-        placeholder = placeholder.replaceAll("&c", ChatColor.RED.toString());
-        placeholder = placeholder.replaceAll("&d", ChatColor.LIGHT_PURPLE.toString());
-        placeholder = placeholder.replaceAll("&e", ChatColor.YELLOW.toString());
-        placeholder = placeholder.replaceAll("&f", ChatColor.WHITE.toString());
-
-        placeholder = placeholder.replaceAll("&k", ChatColor.MAGIC.toString());
-        placeholder = placeholder.replaceAll("&l", ChatColor.BOLD.toString());
-        placeholder = placeholder.replaceAll("&m", ChatColor.STRIKETHROUGH.toString());
-        placeholder = placeholder.replaceAll("&n", ChatColor.UNDERLINE.toString());
-        placeholder = placeholder.replaceAll("&o", ChatColor.ITALIC.toString());
-        placeholder = placeholder.replaceAll("&r", ChatColor.RESET.toString());
-
-        return placeholder;
+        return PluginState.getMessages().getMessage(message).render(replacementsArray);
     }
 
 }
@@ -4,6 +4,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.World;
 import org.bukkit.configuration.MemorySection;
@@ -18,8 +20,15 @@ public class WorldConfig
 {
     private final String DEFAULT_GROUP = "default";
 
+    private final double DEFAULT_CURVE_TABLE_MAX_ERROR = 0.001;
+    private final double DEFAULT_CURVE_TABLE_MAX_DEMAND = 10000;
+    private final int DEFAULT_CURVE_TABLE_MAX_ENTRIES = 1 << 20;
+
     private Map<String, List<String>> worldGroups;
     private Map<String, Map<String, Object>> groupsConfig;
+    private Map<String, PricingParams> pricingParams;
+    private Map<String, String> worldNameToGroup;
+    private Map<UUID, String> worldIdToGroup;
 
     /**
      * Constructor.
@@ -29,6 +38,8 @@ public class WorldConfig
     {
         worldGroups = new HashMap<String, List<String>>();
         groupsConfig = new HashMap<String, Map<String, Object>>();
+        worldNameToGroup = new HashMap<String, String>();
+        worldIdToGroup = new ConcurrentHashMap<UUID, String>();
 
         MemorySection groupsDataSection = (MemorySection)worldGroupsData.get("groups");
 
@@ -54,6 +65,65 @@ public class WorldConfig
                 worldGroups.put(key, groupDataSection.getStringList("worlds"));
             }
         }
+
+        // Build the reverse index of world names to groups
+        for(String group : worldGroups.keySet())
+        {
+            for(String world : worldGroups.get(group))
+            {
+                if(!worldNameToGroup.containsKey(world))
+                {
+                    worldNameToGroup.put(world, group);
+                }
+            }
+        }
+
+        boolean curveTableEnabled = false;
+        double maxError = DEFAULT_CURVE_TABLE_MAX_ERROR;
+        double maxDemand = DEFAULT_CURVE_TABLE_MAX_DEMAND;
+        int maxEntries = DEFAULT_CURVE_TABLE_MAX_ENTRIES;
+
+        MemorySection curveTableSection = (MemorySection)worldGroupsData.get("curveTable");
+        if(curveTableSection != null)
+        {
+            curveTableEnabled = curveTableSection.getBoolean("enabled", false);
+            maxError = curveTableSection.getDouble("maxError", DEFAULT_CURVE_TABLE_MAX_ERROR);
+            maxDemand = curveTableSection.getDouble("maxDemand", DEFAULT_CURVE_TABLE_MAX_DEMAND);
+            maxEntries = curveTableSection.getInt("maxEntries", DEFAULT_CURVE_TABLE_MAX_ENTRIES);
+        }
+
+        // Compile the pricing parameters of each group once
+        pricingParams = new HashMap<String, PricingParams>();
+        for(String group : groupsConfig.keySet())
+        {
+            PriceCurve priceCurve = null;
+            if(curveTableEnabled)
+            {
+                priceCurve = new PriceCurve(
+                    getBasePrice(group), 
+                    getMinPricePerStack(group), 
+                    getSellPriceSteepness(group), 
+                    getBuyPriceSteepness(group), 
+                    getBuyPriceAsymptoteSlope(group), 
+                    getSellPriceFactor(group), 
+                    getBuyPriceFactor(group), 
+                    maxError, 
+                    maxDemand, 
+                    maxEntries);
+            }
+
+            pricingParams.put(group, new PricingParams(
+                getBasePrice(group), 
+                getMinPricePerStack(group), 
+                getSellPriceSteepness(group), 
+                getBuyPriceSteepness(group), 
+                getBuyPriceAsymptoteSlope(group), 
+                getSellPriceFactor(group), 
+                getBuyPriceFactor(group), 
+                getSaleDecayPerDay(group), 
+                getBuyDecayPerDay(group), 
+                priceCurve));
+        }
     }
 
     /**
@@ -63,6 +133,12 @@ public class WorldConfig
      */
     public String getGroupFromWorld(World world)
     {
+        String group = worldIdToGroup.get(world.getUID());
+        if(group != null)
+        {
+            return group;
+        }
+
         return getGroupFromWorld(world.getName());
     }
 
@@ -73,18 +149,31 @@ public class WorldConfig
      */
     public String getGroupFromWorld(String world)
     {
-        String group = DEFAULT_GROUP;
-
-        for(String grp : worldGroups.keySet())
+        String group = worldNameToGroup.get(world);
+        if(group != null)
         {
-            if(worldGroups.get(grp).contains(world))
-            {
-                group = grp;
-                break;
-            }
+            return group;
         }
 
-        return group;
+        return DEFAULT_GROUP;
+    }
+
+    /**
+     * Register a loaded world, so that its group can be found by its UID.
+     * @param world The world to register.
+     */
+    public void registerWorld(World world)
+    {
+        worldIdToGroup.put(world.getUID(), getGroupFromWorld(world.getName()));
+    }
+
+    /**
+     * Deregister a world that is being unloaded.
+     * @param world The world to deregister.
+     */
+    public void deregisterWorld(World world)
+    {
+        worldIdToGroup.remove(world.getUID());
     }
 
     /**
@@ -96,6 +185,26 @@ public class WorldConfig
         return worldGroups.keySet();
     }
 
+    /**
+     * Get the compiled pricing parameters of a group.
+     * @param group The group to get the pricing parameters for.
+     * @return The pricing parameters of the group, or the default pricing 
+     * parameters if the group is not configured.
+     */
+    public PricingParams getPricingParams(String group)
+    {
+        PricingParams params = pricingParams.get(group);
+        if(params != null)
+        {
+            return params;
+        }
+        else
+        {
+            // Get default group parameters
+            return pricingParams.get(DEFAULT_GROUP);
+        }
+    }
+
     /**
      * Get the default base price.
      * @return The default base price.
@@ -0,0 +1,37 @@
+package org.kepow.economysim;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+/**
+ * Class that keeps the world configuration's index of loaded worlds
+ * up-to-date.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class WorldListener implements Listener
+{
+    /**
+     * Handle world load event.
+     * @param event The world load event.
+     */
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event)
+    {
+        PluginState.getWorldConfig().registerWorld(event.getWorld());
+    }
+
+    /**
+     * Handle world unload event.
+     * @param event The world unload event.
+     */
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void onWorldUnload(WorldUnloadEvent event)
+    {
+        PluginState.getWorldConfig().deregisterWorld(event.getWorld());
+    }
+}
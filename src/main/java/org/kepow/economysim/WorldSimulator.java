@@ -1,7 +1,10 @@
 package org.kepow.economysim;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.bukkit.configuration.serialization.ConfigurationSerializable;
 import org.bukkit.inventory.ItemStack;
@@ -10,13 +13,123 @@ import org.kepow.economysim.Simulator.TransactionType;
 /**
  * Class representing a simulator for a world group.
  * 
+ * The simulator can be used from any thread. Quotes take a read lock on the 
+ * world group, so they run concurrently with each other; recording movement 
+ * and decaying take a write lock on the world group.
+ * 
  * @author Thomas Churchman
  *
  */
 public class WorldSimulator implements ConfigurationSerializable
 {
-    private Map<ItemStack, TransactionMovement> transactionMovement;
+    /**
+     * Class representing a scratch view on the transaction movement of this
+     * simulator. Simulated demand is only recorded for the items that are touched,
+     * the demand of all other items is read from the live demand store and the
+     * pending movement.
+     * 
+     * @author Thomas Churchman
+     *
+     */
+    private class DemandOverlay
+    {
+        private int[] keys;
+        private double[] simulatedDemand;
+        private int size = 0;
+        private long now;
+
+        /**
+         * Constructor.
+         * @param capacity The maximum number of items movement will be simulated for.
+         * @param now The time in milliseconds to read the live demand at.
+         */
+        public DemandOverlay(int capacity, long now)
+        {
+            keys = new int[capacity];
+            simulatedDemand = new double[capacity];
+            this.now = now;
+        }
+
+        /**
+         * Find the index of an item in the overlay.
+         * @param key The item key of the item.
+         * @return The index, or -1 if no movement has been simulated for the item.
+         */
+        private int indexOf(int key)
+        {
+            for(int i = 0; i < size; ++i)
+            {
+                if(keys[i] == key)
+                {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Get the (simulated) demand of an item.
+         * @param key The item key of the item to get the demand for.
+         * @return The simulated demand if movement has been simulated for the item, 
+         * or the live demand otherwise.
+         */
+        public double getDemand(int key)
+        {
+            int index = indexOf(key);
+            if(index >= 0)
+            {
+                return simulatedDemand[index];
+            }
+
+            if(pendingMovement.size() == 0)
+            {
+                return demandStore.getDemand(key, now);
+            }
+
+            return demandStore.getDemand(key, now) + pendingMovement.getDemand(key, now);
+        }
+
+        /**
+         * Simulate transaction movement of an item.
+         * @param key The item key of the item to simulate the movement for.
+         * @param movement The amount of movement.
+         * @param type The movement type (BUY/SELL).
+         */
+        public void addMovement(int key, double movement, TransactionType type)
+        {
+            double demand = getDemand(key);
+            if(type == TransactionType.BUY)
+            {
+                demand += movement;
+            }
+            else
+            {
+                demand -= movement;
+            }
+
+            int index = indexOf(key);
+            if(index < 0)
+            {
+                index = size++;
+                keys[index] = key;
+            }
+            simulatedDemand[index] = demand;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private DemandStore demandStore;
+    private DemandStore pendingMovement = new DemandStore();
+    private ItemKeyMap<Long> demandVersions = new ItemKeyMap<Long>();
+    private long demandVersion = 0;
+    private long decayVersion = 0;
     private String worldGroup = "default"; 
+    private volatile PricingParams pricingParams;
+    private volatile boolean lazyDecay = false;
+    private volatile double buyDecayPerDay = 0;
+    private volatile double saleDecayPerDay = 0;
+    private volatile TransactionJournal journal = null;
 
     /**
      * Constructor.
@@ -24,7 +137,30 @@ public class WorldSimulator implements ConfigurationSerializable
      */
     public WorldSimulator(Map<String, Object> map)
     {
-        transactionMovement = (Map<ItemStack, TransactionMovement>) map.get("transactionMovement");
+        demandStore = new DemandStore();
+
+        // Movement is stored as it was at the time of saving
+        long decayTime = System.currentTimeMillis();
+        if(map.containsKey("decayTime"))
+        {
+            decayTime = ((Number) map.get("decayTime")).longValue();
+        }
+
+        Map<ItemStack, TransactionMovement> movementData = (Map<ItemStack, TransactionMovement>) map.get("transactionMovement");
+        if(movementData == null)
+        {
+            return;
+        }
+
+        for(ItemStack item : movementData.keySet())
+        {
+            // Items that only differ in meta data share their key
+            TransactionMovement movement = movementData.get(item);
+            int key = ItemKey.of(item);
+
+            demandStore.addBuyMovement(key, movement.getBuyMovement(), decayTime);
+            demandStore.addSaleMovement(key, movement.getSaleMovement(), decayTime);
+        }
     }
 
     /**
@@ -32,10 +168,61 @@ public class WorldSimulator implements ConfigurationSerializable
      */
     public WorldSimulator(String worldGroup)
     {
-        transactionMovement = new HashMap<ItemStack, TransactionMovement>();
+        demandStore = new DemandStore();
+        this.worldGroup = worldGroup;
+    }
+
+    /**
+     * Constructor.
+     * @param worldGroup The world group this simulator is for.
+     * @param demandStore The demand store holding the transaction movement.
+     */
+    public WorldSimulator(String worldGroup, DemandStore demandStore)
+    {
+        this.demandStore = demandStore;
         this.worldGroup = worldGroup;
     }
 
+    /**
+     * Copy constructor. The demand store is copied as well; pending movement is not.
+     * @param simulator WorldSimulator to copy.
+     */
+    public WorldSimulator(WorldSimulator simulator)
+    {
+        simulator.lock.readLock().lock();
+        try
+        {
+            demandStore = new DemandStore(simulator.demandStore);
+            worldGroup = simulator.worldGroup;
+            pricingParams = simulator.pricingParams;
+            lazyDecay = simulator.lazyDecay;
+            buyDecayPerDay = simulator.buyDecayPerDay;
+            saleDecayPerDay = simulator.saleDecayPerDay;
+        }
+        finally
+        {
+            simulator.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Block recording movement and decaying until {@link #unblockWrites()} is 
+     * called, so that several simulators can be copied at a single point in 
+     * time. Reading (and copying) from the blocking thread remains possible.
+     */
+    void blockWrites()
+    {
+        lock.writeLock().lock();
+    }
+
+    /**
+     * Allow recording movement and decaying again after {@link #blockWrites()}.
+     */
+    void unblockWrites()
+    {
+        lock.writeLock().unlock();
+    }
+
     /**
      * Set the world group this simulator is for.
      * @param worldGroup The world group.
@@ -45,6 +232,126 @@ public class WorldSimulator implements ConfigurationSerializable
         this.worldGroup = worldGroup;
     }
 
+    /**
+     * Get the world group this simulator is for.
+     * @return The world group.
+     */
+    public String getWorldGroup()
+    {
+        return this.worldGroup;
+    }
+
+    /**
+     * Get the demand store holding the transaction movement of this simulator.
+     * The demand store is not guarded by the simulator's lock; it should only be
+     * accessed directly while no other thread uses the simulator, such as 
+     * while loading or on a copy.
+     * @return The demand store.
+     */
+    public DemandStore getDemandStore()
+    {
+        return this.demandStore;
+    }
+
+    /**
+     * Set the pricing parameters this simulator uses. The parameters
+     * are swapped atomically; quotes in progress keep using the 
+     * parameters they started with.
+     * @param pricingParams The pricing parameters.
+     */
+    public void setPricingParams(PricingParams pricingParams)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            this.pricingParams = pricingParams;
+
+            // The pricing parameters changed, which affects every item
+            decayVersion = ++demandVersion;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Set the fraction of the transaction movement that decays each day.
+     * @param buyDecayPerDay The buy decay per day.
+     * @param saleDecayPerDay The sale decay per day.
+     */
+    public void setDecayPerDay(double buyDecayPerDay, double saleDecayPerDay)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            this.buyDecayPerDay = buyDecayPerDay;
+            this.saleDecayPerDay = saleDecayPerDay;
+            updateLazyDecay();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Set whether decay is performed lazily. When it is, movement is decayed 
+     * in closed form whenever an item is read or traded, and 
+     * {@link #performPeriodicDecay(double)} only invalidates quotes.
+     * @param lazyDecay Whether decay is performed lazily.
+     */
+    public void setLazyDecay(boolean lazyDecay)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            this.lazyDecay = lazyDecay;
+            updateLazyDecay();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Set the journal transaction movement is recorded in.
+     * @param journal The journal, or null if movement should not be journaled.
+     */
+    public void setJournal(TransactionJournal journal)
+    {
+        this.journal = journal;
+    }
+
+    /**
+     * Pass the decay rates to the demand store if decay is performed lazily.
+     * Must be called with the write lock held.
+     */
+    private void updateLazyDecay()
+    {
+        if(lazyDecay)
+        {
+            demandStore.setLazyDecay(buyDecayPerDay, saleDecayPerDay);
+        }
+        else
+        {
+            demandStore.disableLazyDecay();
+        }
+
+        // The decay changed, which affects every item
+        decayVersion = ++demandVersion;
+    }
+
+    /**
+     * Get the pricing parameters this simulator uses.
+     * @return The pricing parameters.
+     */
+    public PricingParams getPricingParams()
+    {
+        return this.pricingParams;
+    }
+
     /**
      * Maps and compresses the entered item stacks. 
      * @param items The item stacks to compress.
@@ -56,10 +363,7 @@ public class WorldSimulator implements ConfigurationSerializable
 
         for(ItemStack item : items)
         {
-            ItemStack checkItem = new ItemStack(item);
-            checkItem.setAmount(1);
-
-            ItemConfig.ItemMap map = PluginState.getItemConfig().getMapping(checkItem);
+            ItemConfig.ItemMap map = PluginState.getItemConfig().getMapping(item);
 
             if(mapped.containsKey(map))
             {
@@ -82,22 +386,29 @@ public class WorldSimulator implements ConfigurationSerializable
     {
         Map<ItemConfig.ItemMap, Integer> mapped = getMappedItemStacks(items);
 
-        for(ItemConfig.ItemMap map : mapped.keySet())
+        lock.writeLock().lock();
+        try
         {
-            int amount = mapped.get(map);
-            double movement = amount * map.getRelativeValue();
+            // Taken under the lock, so movement is recorded in time order
+            long now = System.currentTimeMillis();
 
-            if(transactionMovement.containsKey(map.getItem()))
-            {
-                transactionMovement.get(map.getItem()).addBuyMovement(movement);
-            }
-            else
+            for(ItemConfig.ItemMap map : mapped.keySet())
             {
-                TransactionMovement trMovement = new TransactionMovement();
-                trMovement.addBuyMovement(movement);
-                transactionMovement.put(map.getItem(), trMovement);
+                int amount = mapped.get(map);
+                double movement = amount * map.getRelativeValue();
+
+                demandStore.addBuyMovement(map.getKey(), movement, now);
+                touch(map.getKey());
+                if(journal != null)
+                {
+                    journal.append(worldGroup, map.getKey(), movement, TransactionType.BUY, now);
+                }
             }
         }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -108,21 +419,155 @@ public class WorldSimulator implements ConfigurationSerializable
     {
         Map<ItemConfig.ItemMap, Integer> mapped = getMappedItemStacks(items);
 
-        for(ItemConfig.ItemMap map : mapped.keySet())
+        lock.writeLock().lock();
+        try
         {
-            int amount = mapped.get(map);
-            double movement = amount * map.getRelativeValue();
+            // Taken under the lock, so movement is recorded in time order
+            long now = System.currentTimeMillis();
 
-            if(transactionMovement.containsKey(map.getItem()))
+            for(ItemConfig.ItemMap map : mapped.keySet())
             {
-                transactionMovement.get(map.getItem()).addSaleMovement(movement);
+                int amount = mapped.get(map);
+                double movement = amount * map.getRelativeValue();
+
+                demandStore.addSaleMovement(map.getKey(), movement, now);
+                touch(map.getKey());
+                if(journal != null)
+                {
+                    journal.append(worldGroup, map.getKey(), movement, TransactionType.SELL, now);
+                }
             }
-            else
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Record buy movement of an item as pending. Pending movement is included
+     * in prices right away, but is only added to the demand store when the 
+     * movement is flushed.
+     * @param items The item to add the buy movement for.
+     */
+    public void bufferBuyMovement(ItemStack[] items)
+    {
+        Map<ItemConfig.ItemMap, Integer> mapped = getMappedItemStacks(items);
+
+        lock.writeLock().lock();
+        try
+        {
+            long now = System.currentTimeMillis();
+            for(ItemConfig.ItemMap map : mapped.keySet())
+            {
+                pendingMovement.addBuyMovement(map.getKey(), mapped.get(map) * map.getRelativeValue(), now);
+                touch(map.getKey());
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Record sale movement of an item as pending. Pending movement is included
+     * in prices right away, but is only added to the demand store when the 
+     * movement is flushed.
+     * @param items The item to add the sale movement for.
+     */
+    public void bufferSaleMovement(ItemStack[] items)
+    {
+        Map<ItemConfig.ItemMap, Integer> mapped = getMappedItemStacks(items);
+
+        lock.writeLock().lock();
+        try
+        {
+            long now = System.currentTimeMillis();
+            for(ItemConfig.ItemMap map : mapped.keySet())
+            {
+                pendingMovement.addSaleMovement(map.getKey(), mapped.get(map) * map.getRelativeValue(), now);
+                touch(map.getKey());
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Mark that the demand of an item changed. Must be called with the write lock held.
+     * @param key The item key of the item.
+     */
+    private void touch(int key)
+    {
+        demandVersions.put(key, ++demandVersion);
+    }
+
+    /**
+     * Get the demand version of an item, which changes whenever movement of the
+     * item is recorded, or decay is performed. Decay that accumulates lazily
+     * changes the version whenever periodic decay would have been performed. 
+     * Must be called with the read lock held.
+     * @param key The item key of the item.
+     * @return The demand version.
+     */
+    private long getDemandVersion(int key)
+    {
+        Long version = demandVersions.get(key);
+        return version == null ? decayVersion : Math.max(version, decayVersion);
+    }
+
+    /**
+     * Add the pending movement to the demand store, aggregated per item.
+     * Pending movement is already included in prices, so demand versions
+     * do not change.
+     * @return The item keys of the items that had pending movement, or null 
+     * if there was no pending movement.
+     */
+    public ItemKeyIndex flushMovement()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if(pendingMovement.size() == 0)
+            {
+                return null;
+            }
+
+            long now = System.currentTimeMillis();
+            for(int i = 0; i < pendingMovement.size(); ++i)
             {
-                TransactionMovement trMovement = new TransactionMovement();
-                trMovement.addSaleMovement(movement);
-                transactionMovement.put(map.getItem(), trMovement);
+                int key = pendingMovement.getKey(i);
+                double buyMovement = pendingMovement.getBuyMovement(i, now);
+                double saleMovement = pendingMovement.getSaleMovement(i, now);
+
+                if(buyMovement != 0)
+                {
+                    demandStore.addBuyMovement(key, buyMovement, now);
+                    if(journal != null)
+                    {
+                        journal.append(worldGroup, key, buyMovement, TransactionType.BUY, now);
+                    }
+                }
+                if(saleMovement != 0)
+                {
+                    demandStore.addSaleMovement(key, saleMovement, now);
+                    if(journal != null)
+                    {
+                        journal.append(worldGroup, key, saleMovement, TransactionType.SELL, now);
+                    }
+                }
             }
+
+            ItemKeyIndex flushed = pendingMovement;
+            pendingMovement = new DemandStore();
+            return flushed;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
         }
     }
 
@@ -133,11 +578,46 @@ public class WorldSimulator implements ConfigurationSerializable
      */
     public void performDecay(double buyDecay, double sellDecay)
     {
-        for(TransactionMovement transactionMovement : this.transactionMovement.values())
+        lock.writeLock().lock();
+        try
+        {
+            demandStore.decay(buyDecay, sellDecay);
+            decayVersion = ++demandVersion;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Perform the decay for a period of time, using the decay per day of 
+     * this simulator. If decay is performed lazily, only the 
+     * decay accumulated since the last time is made to invalidate quotes.
+     * @param days The period of time in days.
+     */
+    public void performPeriodicDecay(double days)
+    {
+        if(lazyDecay)
         {
-            transactionMovement.decayBuyMovement(buyDecay);
-            transactionMovement.decaySaleMovement(sellDecay);
+            lock.writeLock().lock();
+            try
+            {
+                decayVersion = ++demandVersion;
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+            return;
         }
+
+        // (1-decayPeriod)^(1/days) == (1-decayDay)
+        // decayPeriod = 1-(1-decayDay)^days
+        double buyDecay = 1-Math.pow(1-buyDecayPerDay, days);
+        double sellDecay = 1-Math.pow(1-saleDecayPerDay, days);
+
+        performDecay(buyDecay, sellDecay);
     }
 
     /**
@@ -147,62 +627,126 @@ public class WorldSimulator implements ConfigurationSerializable
      */
     public double getPrice(ItemStack[] items, TransactionType type)
     {
-        // Make a deep copy to keep track of simulated amounts
-        Map<ItemStack, TransactionMovement> transactionMovementCopy = new HashMap<ItemStack, TransactionMovement>();
-        for(ItemStack item : this.transactionMovement.keySet())
+        Map<ItemConfig.ItemMap, Integer> mapped = getMappedItemStacks(items);
+        PricingParams params = this.pricingParams;
+
+        lock.readLock().lock();
+        try
+        {
+            return getPrice(mapped, type, params, System.currentTimeMillis());
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Quote the total prices of several arrays of item stacks for a given 
+     * transaction type. All prices are calculated against the same demand.
+     * @param baskets The arrays of item stacks to quote.
+     * @param type The transaction type.
+     * @return The quote of each array of item stacks.
+     */
+    public Quote[] getQuotes(ItemStack[][] baskets, TransactionType type)
+    {
+        List<Map<ItemConfig.ItemMap, Integer>> mapped = new ArrayList<Map<ItemConfig.ItemMap, Integer>>(baskets.length);
+        for(ItemStack[] items : baskets)
         {
-            TransactionMovement copy = new TransactionMovement(this.transactionMovement.get(item));
-            transactionMovementCopy.put(item, copy);
+            mapped.add(getMappedItemStacks(items));
         }
 
-        Map<ItemConfig.ItemMap, Integer> mapped = getMappedItemStacks(items);
+        Quote[] quotes = new Quote[baskets.length];
 
-        double price = 0;
-        //double basePrice = PluginState.getPlugin().getConfig().getDouble("simulator.basePrice");
-        double basePrice = PluginState.getWorldConfig().getBasePrice(this.worldGroup);
-        
-        double minPricePerStack = PluginState.getWorldConfig().getMinPricePerStack(this.worldGroup);
-        
-        //double sellPriceSteepness = PluginState.getPlugin().getConfig().getDouble("simulator.sellPriceSteepness");
-        double sellPriceSteepness = PluginState.getWorldConfig().getSellPriceSteepness(this.worldGroup);
+        lock.readLock().lock();
+        try
+        {
+            // Read under the lock, so a quote is never stamped with the 
+            // version of parameters it was not calculated with
+            PricingParams params = this.pricingParams;
+            long now = System.currentTimeMillis();
+
+            for(int i = 0; i < quotes.length; ++i)
+            {
+                Map<ItemConfig.ItemMap, Integer> basket = mapped.get(i);
+                int[] keys = new int[basket.size()];
+                long[] versions = new long[basket.size()];
+
+                int j = 0;
+                for(ItemConfig.ItemMap map : basket.keySet())
+                {
+                    keys[j] = map.getKey();
+                    versions[j] = getDemandVersion(map.getKey());
+                    ++j;
+                }
+
+                quotes[i] = new Quote(this, getPrice(basket, type, params, now), keys, versions);
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
 
-        //double buyPriceSteepness = PluginState.getPlugin().getConfig().getDouble("simulator.buyPriceSteepness");
-        double buyPriceSteepness = PluginState.getWorldConfig().getBuyPriceSteepness(this.worldGroup);
+        return quotes;
+    }
 
-        //double buyPriceAsymptote = PluginState.getPlugin().getConfig().getDouble("simulator.buyPriceAsymptoteSlope");
-        double buyPriceAsymptote = PluginState.getWorldConfig().getBuyPriceAsymptoteSlope(this.worldGroup);
+    /**
+     * Test whether a quote still holds: it was quoted by this simulator, and 
+     * the demand of none of its items changed since.
+     * @param quote The quote.
+     * @return True if the quote still holds, false otherwise.
+     */
+    public boolean isCurrent(Quote quote)
+    {
+        if(quote.getWorldSimulator() != this)
+        {
+            return false;
+        }
 
-        //double sellPriceFactor = PluginState.getPlugin().getConfig().getDouble("simulator.sellPriceFactor");
-        double sellPriceFactor = PluginState.getWorldConfig().getSellPriceFactor(this.worldGroup);
+        lock.readLock().lock();
+        try
+        {
+            int[] keys = quote.getKeys();
+            long[] versions = quote.getVersions();
+            for(int i = 0; i < keys.length; ++i)
+            {
+                if(getDemandVersion(keys[i]) != versions[i])
+                {
+                    return false;
+                }
+            }
 
-        //double buyPriceFactor = PluginState.getPlugin().getConfig().getDouble("simulator.buyPriceFactor");
-        double buyPriceFactor = PluginState.getWorldConfig().getBuyPriceFactor(this.worldGroup);
+            return true;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
 
+    /**
+     * Get the total price of mapped item stacks. Must be called with the read lock held.
+     * @param mapped The mapped item stacks, with how many of them are present.
+     * @param type The transaction type.
+     * @param params The pricing parameters.
+     * @param now The time in milliseconds to read the demand at.
+     * @return The total price.
+     */
+    private double getPrice(Map<ItemConfig.ItemMap, Integer> mapped, TransactionType type, PricingParams params, long now)
+    {
+        // Keep track of simulated amounts without touching the live movement
+        DemandOverlay overlay = new DemandOverlay(mapped.size(), now);
 
+        double price = 0;
         for(ItemConfig.ItemMap map : mapped.keySet())
         {
             double amount = mapped.get(map) * map.getRelativeValue();
+            double demand = overlay.getDemand(map.getKey());
 
-            TransactionMovement movement;
-            if(transactionMovementCopy.containsKey(map.getItem()))
-            {
-                movement = transactionMovementCopy.get(map.getItem());
-            }
-            else
-            {
-                movement = new TransactionMovement();
-            }
-
-            price += Simulator.getTransactionPrice(type, 
-                amount, 
-                movement.getDemand(), 
-                basePrice, 
-                minPricePerStack,
-                sellPriceSteepness, buyPriceSteepness, 
-                buyPriceAsymptote, 
-                sellPriceFactor, buyPriceFactor);
+            price += params.getTransactionPrice(type, amount, demand);
 
-            movement.addMovement(amount, type);
+            overlay.addMovement(map.getKey(), amount, type);
         }
 
         return price;
@@ -214,8 +758,26 @@ public class WorldSimulator implements ConfigurationSerializable
      */
     public Map<String, Object> serialize() 
     {
+        long now = System.currentTimeMillis();
+
+        Map<ItemStack, TransactionMovement> movementData = new HashMap<ItemStack, TransactionMovement>();
+        lock.readLock().lock();
+        try
+        {
+            for(int i = 0; i < demandStore.size(); ++i)
+            {
+                TransactionMovement movement = new TransactionMovement(demandStore.getBuyMovement(i, now), demandStore.getSaleMovement(i, now));
+                movementData.put(ItemKey.toItemStack(demandStore.getKey(i)), movement);
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
         Map<String, Object> map = new HashMap<String, Object>();
-        map.put("transactionMovement", transactionMovement);
+        map.put("transactionMovement", movementData);
+        map.put("decayTime", now);
 
         return map;
     }
@@ -0,0 +1,137 @@
+package org.kepow.economysim;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+/**
+ * Class representing the file storage backend. Shops are stored in 
+ * shops.yml, the simulator in simulator.yml or, in the binary format, 
+ * in a simulator file.
+ * 
+ * @author Thomas Churchman
+ *
+ */
+public class YamlStorageBackend implements StorageBackend
+{
+    private CustomConfig shopsConfig;
+    private CustomConfig simulatorConfig;
+    private SimulatorFile simulatorFile;
+    private boolean binaryFormat;
+
+    /**
+     * Constructor.
+     * @param shopsConfig The custom config file holding the shops.
+     * @param simulatorConfig The custom config file holding the simulator.
+     * @param simulatorFile The binary simulator file.
+     * @param binaryFormat Whether the simulator should be saved in the binary format.
+     */
+    public YamlStorageBackend(CustomConfig shopsConfig, CustomConfig simulatorConfig, 
+        SimulatorFile simulatorFile, boolean binaryFormat)
+    {
+        this.shopsConfig = shopsConfig;
+        this.simulatorConfig = simulatorConfig;
+        this.simulatorFile = simulatorFile;
+        this.binaryFormat = binaryFormat;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#open()
+     */
+    public void open() throws IOException
+    {
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#hasData()
+     */
+    public boolean hasData() throws IOException
+    {
+        return shopsConfig.getCustomConfig().contains("shopList") 
+            || simulatorConfig.getCustomConfig().contains("simulator")
+            || simulatorFile.exists();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#loadShops()
+     */
+    public ShopList loadShops() throws IOException
+    {
+        ShopList shops = (ShopList) shopsConfig.getCustomConfig().get("shopList", ShopList.class);
+        if(shops == null)
+        {
+            shops = new ShopList();
+        }
+
+        return shops;
+    }
+
+    /*
+     * (non-Javadoc)
+     * Loads the simulator from whichever format was saved last. If that is not
+     * the configured format, it is converted on the next save.
+     * @see org.kepow.economysim.StorageBackend#loadSimulator()
+     */
+    public Simulator loadSimulator() throws IOException
+    {
+        File simulatorYamlFile = new File(PluginState.getPlugin().getDataFolder(), simulatorConfig.getFileName());
+        boolean yamlHasSimulator = simulatorConfig.getCustomConfig().contains("simulator");
+
+        if(simulatorFile.exists() 
+            && (!yamlHasSimulator || simulatorFile.getFile().lastModified() >= simulatorYamlFile.lastModified()))
+        {
+            return simulatorFile.read();
+        }
+        else if(yamlHasSimulator)
+        {
+            return (Simulator) simulatorConfig.getCustomConfig().get("simulator");
+        }
+        else
+        {
+            return new Simulator();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#saveShops(org.kepow.economysim.ShopList, java.util.Set)
+     */
+    public void saveShops(ShopList shopList, Set<String> changedShops) throws IOException
+    {
+        // All shops are in a single file, which is rewritten as a whole
+        YamlConfiguration shops = new YamlConfiguration();
+        shops.set("shopList", shopList);
+        shopsConfig.saveToFile(shops.saveToString());
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#saveSimulator(org.kepow.economysim.Simulator)
+     */
+    public void saveSimulator(Simulator simulator) throws IOException
+    {
+        if(binaryFormat)
+        {
+            simulatorFile.write(simulator);
+        }
+        else
+        {
+            YamlConfiguration config = new YamlConfiguration();
+            config.set("simulator", simulator);
+            simulatorConfig.saveToFile(config.saveToString());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.kepow.economysim.StorageBackend#close()
+     */
+    public void close()
+    {
+    }
+}